@@ -0,0 +1,127 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * A simple fixed-strategy opponent for the simulator, something like the Lux "Angry" agents.
+ * It reinforces its most threatened border, attacks wherever it has more armies than the defender,
+ * and fortifies towards the front. It uses no randomness of its own.
+ */
+public class SimBasicPlayer implements SimPlayer {
+
+	private int ID;
+	private SimGame game;
+	private int numCountries;
+	// breadth first search work space for fortifyPhase
+	private int[] distanceToEnemy;
+	private int[] queue;
+
+	public void setPrefs(int id, SimGame game) {
+		this.ID = id;
+		this.game = game;
+		numCountries = game.getNumberOfCountries();
+		distanceToEnemy = new int[numCountries];
+		queue = new int[numCountries];
+	}
+
+	public void placeInitialArmies(int numberOfArmies) {
+		placeArmies(numberOfArmies);
+	}
+
+	public boolean cardsPhase() {
+		return true;
+	}
+
+	// everything goes on the owned country facing the most enemy armies compared to its own
+	public void placeArmies(int numberOfArmies) {
+		int best = -1;
+		int bestThreat = Integer.MIN_VALUE;
+		for (int code = 0; code < numCountries; code++) {
+			if (game.getOwner(code) != ID) {
+				continue;
+			}
+			int enemies = 0;
+			int[] adjoining = game.getAdjoining(code);
+			for (int i = 0; i < adjoining.length; i++) {
+				if (game.getOwner(adjoining[i]) != ID) {
+					enemies += game.getArmies(adjoining[i]);
+				}
+			}
+			if (enemies > 0 && enemies - game.getArmies(code) > bestThreat) {
+				bestThreat = enemies - game.getArmies(code);
+				best = code;
+			}
+		}
+		if (best != -1) {
+			game.placeArmies(numberOfArmies, best);
+		}
+	}
+
+	public void attackPhase() {
+		boolean attacked = true;
+		while (attacked) {
+			attacked = false;
+			for (int us = 0; us < numCountries; us++) {
+				if (game.getOwner(us) != ID) {
+					continue;
+				}
+				int[] adjoining = game.getAdjoining(us);
+				for (int i = 0; i < adjoining.length && game.getArmies(us) > 1; i++) {
+					int them = adjoining[i];
+					if (game.getOwner(them) != ID && game.getArmies(us) > game.getArmies(them) + 1) {
+						game.attack(us, them, true);
+						attacked = true;
+					}
+				}
+			}
+		}
+	}
+
+	// move everything forward if the old country is now safe, otherwise split the armies
+	public int moveArmiesIn(int attacker, int defender) {
+		int[] adjoining = game.getAdjoining(attacker);
+		for (int i = 0; i < adjoining.length; i++) {
+			if (game.getOwner(adjoining[i]) != ID) {
+				return (game.getArmies(attacker) - 1) / 2;
+			}
+		}
+		return game.getArmies(attacker) - 1;
+	}
+
+	// armies away from the front move one step closer to the nearest enemy country
+	public void fortifyPhase() {
+		int head = 0;
+		int tail = 0;
+		for (int code = 0; code < numCountries; code++) {
+			if (game.getOwner(code) != ID) {
+				distanceToEnemy[code] = 0;
+				queue[tail++] = code;
+			} else {
+				distanceToEnemy[code] = -1;
+			}
+		}
+		while (head < tail) {
+			int code = queue[head++];
+			int[] adjoining = game.getAdjoining(code);
+			for (int i = 0; i < adjoining.length; i++) {
+				if (distanceToEnemy[adjoining[i]] == -1) {
+					distanceToEnemy[adjoining[i]] = distanceToEnemy[code] + 1;
+					queue[tail++] = adjoining[i];
+				}
+			}
+		}
+		for (int code = 0; code < numCountries; code++) {
+			if (game.getOwner(code) != ID || distanceToEnemy[code] <= 1 || game.getMoveableArmies(code) == 0) {
+				continue;
+			}
+			int[] adjoining = game.getAdjoining(code);
+			for (int i = 0; i < adjoining.length; i++) {
+				if (distanceToEnemy[adjoining[i]] == distanceToEnemy[code] - 1) {
+					game.fortifyArmies(game.getMoveableArmies(code), code, adjoining[i]);
+					break;
+				}
+			}
+		}
+	}
+
+	public void gameOver(boolean won) {
+	}
+}
@@ -0,0 +1,321 @@
+package com.sillysoft.lux.agent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro benchmarks of the agent's hot paths on simulator boards of different sizes.
+ *
+ * Usage: java com.sillysoft.lux.agent.SimBench [options]
+ *   --sizes 42,150,500     the board sizes to run (the classic, large and huge maps; other sizes are grid maps)
+ *   --warmup N             warmup iterations per benchmark (default 5)
+ *   --iterations N         measured iterations per benchmark (default 10)
+ *   --time ms              the length of each iteration (default 200)
+ *   --only name            only run benchmarks whose name contains <name>
+ *
+ * Each benchmark has a setup step that runs before every invocation and is not timed, so phases that change
+ * the board always start from a fresh position: a seeded game played for a few rounds.
+ * For each benchmark and size the report gives the mean time per invocation with its spread over the
+ * measured iterations, and the bytes allocated per invocation and the allocation rate, read from the
+ * JVM's per-thread allocation counter. Results are kept in a field so the JIT cannot drop the work.
+ *
+ * The SimLearner cases time the simulator's port of Learner's formulas, which is what a training game costs.
+ * They are not timings of Learner: Learner and SmartAgentBase only run on the engine's Board, so time them in Lux
+ * with -Driskai.profile=true (see AgentProfiler). The other cases time agent classes that work on primitive state.
+ */
+public class SimBench {
+
+	// rounds played on a board before it is measured, so it has a mid-game spread of armies
+	private static final int ROUNDS_BEFORE = 3;
+
+	private static volatile float sink;
+
+	/** One benchmark, which is set up again before every timed run. */
+	abstract static class Case {
+		final String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		abstract void setUp(SimMap map, long seed);
+
+		abstract void run();
+	}
+
+	public static void main(String[] args) {
+		int[] sizes = {42, 150, 500};
+		int warmup = 5;
+		int iterations = 10;
+		long iterationTime = 200;
+		String only = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--sizes")) {
+				String[] parts = args[i + 1].split(",");
+				sizes = new int[parts.length];
+				for (int j = 0; j < parts.length; j++) {
+					sizes[j] = Integer.parseInt(parts[j].trim());
+				}
+			} else if (args[i].equals("--warmup")) {
+				warmup = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--iterations")) {
+				iterations = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--time")) {
+				iterationTime = Long.parseLong(args[i + 1]);
+			} else if (args[i].equals("--only")) {
+				only = args[i + 1];
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		System.out.println(String.format("%-30s %6s %14s %10s %14s %12s", "benchmark", "size", "us/op", "+-", "bytes/op", "MB/s"));
+		List<Case> cases = cases();
+		for (int s = 0; s < sizes.length; s++) {
+			SimMap map = mapOfSize(sizes[s]);
+			for (int c = 0; c < cases.size(); c++) {
+				Case benchmark = cases.get(c);
+				if (only == null || benchmark.name.indexOf(only) != -1) {
+					measure(benchmark, map, warmup, iterations, iterationTime);
+				}
+			}
+		}
+	}
+
+	private static void measure(Case benchmark, SimMap map, int warmup, int iterations, long iterationTime) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		double[] nanosPerOp = new double[iterations];
+		long totalBytes = 0;
+		long totalOps = 0;
+		long totalNanos = 0;
+		long seed = 1;
+		for (int iteration = -warmup; iteration < iterations; iteration++) {
+			long ops = 0;
+			long nanos = 0;
+			long bytes = 0;
+			long end = System.currentTimeMillis() + iterationTime;
+			while (ops == 0 || System.currentTimeMillis() < end) {
+				benchmark.setUp(map, seed++);
+				long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+				long before = System.nanoTime();
+				benchmark.run();
+				nanos += System.nanoTime() - before;
+				bytes += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+				ops++;
+			}
+			if (iteration >= 0) {
+				nanosPerOp[iteration] = nanos / (double) ops;
+				totalBytes += bytes;
+				totalOps += ops;
+				totalNanos += nanos;
+			}
+		}
+
+		double mean = 0;
+		for (int i = 0; i < iterations; i++) {
+			mean += nanosPerOp[i];
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (int i = 0; i < iterations; i++) {
+			variance += (nanosPerOp[i] - mean) * (nanosPerOp[i] - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		double bytesPerOp = totalBytes / (double) totalOps;
+		double megabytesPerSecond = totalNanos == 0 ? 0 : totalBytes / (totalNanos / 1e9) / (1024 * 1024);
+		System.out.println(String.format("%-30s %6d %14.3f %10.3f %14.1f %12.1f",
+				benchmark.name, map.getNumberOfCountries(), mean / 1000, error / 1000, bytesPerOp, megabytesPerSecond));
+	}
+
+	private static SimMap mapOfSize(int size) {
+		switch (size) {
+			case 42: return SimMap.named("classic");
+			case 150: return SimMap.named("large");
+			case 500: return SimMap.named("huge");
+			default: return SimMap.grid(size, 10);
+		}
+	}
+
+	// a position with a SimLearner in seat 0 that is still in the game
+	private static SimLearner learnerGame(SimMap map, long seed, SimGame[] game) {
+		while (true) {
+			SimLearner learner = new SimLearner(benchmarkRules(), new Random(seed), 0.15f);
+			SimPlayer[] players = {learner, new SimBasicPlayer(), new SimBasicPlayer(), new SimBasicPlayer()};
+			game[0] = new SimGame(map, players, seed);
+			game[0].setUp();
+			if (game[0].playUntil(ROUNDS_BEFORE) == -1 && game[0].getPlayerCountries(0) > 0) {
+				game[0].beginTurn(0, game[0].getPlayerIncome(0));
+				return learner;
+			}
+			seed += 1000003;
+		}
+	}
+
+	private static RuleTable[] rules;
+
+	// a few rules for each letter, so picking weights does some work
+	private static RuleTable[] benchmarkRules() {
+		if (rules == null) {
+			StringBuilder text = new StringBuilder();
+			for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+				if (phase > 0) {
+					text.append(RuleSet.SECTION_SEPARATOR).append('\n');
+				}
+				for (int letter = 0; letter < 13; letter++) {
+					for (int i = 0; i < 4; i++) {
+						text.append(new Rule(letter, 0.5f + 0.25f * i, i).toString()).append('\n');
+					}
+				}
+			}
+			rules = RuleStore.importText(text.toString());
+		}
+		return rules;
+	}
+
+	private static List<Case> cases() {
+		List<Case> cases = new ArrayList<Case>();
+
+		cases.add(new Case("SimLearner.strategicValue x N") {
+			SimLearner learner;
+			SimGame game;
+
+			void setUp(SimMap map, long seed) {
+				SimGame[] made = new SimGame[1];
+				learner = learnerGame(map, seed, made);
+				game = made[0];
+				learner.placeArmies(0);
+			}
+
+			void run() {
+				float total = 0;
+				float recklessness = learner.currentRecklessness(learner.attackWeights);
+				for (int code = 0; code < game.getNumberOfCountries(); code++) {
+					total += learner.calculateStrategicValue(code, learner.attackWeights, recklessness);
+				}
+				sink = total;
+			}
+		});
+
+		cases.add(new Case("SimLearner.vulnerability x N") {
+			SimLearner learner;
+			SimGame game;
+
+			void setUp(SimMap map, long seed) {
+				SimGame[] made = new SimGame[1];
+				learner = learnerGame(map, seed, made);
+				game = made[0];
+				learner.placeArmies(0);
+			}
+
+			void run() {
+				float total = 0;
+				for (int code = 0; code < game.getNumberOfCountries(); code++) {
+					total += learner.calculateVulnerability(code, learner.fortifyWeights);
+				}
+				sink = total;
+			}
+		});
+
+		cases.add(new Case("SimLearner.placeArmies") {
+			SimLearner learner;
+			SimGame game;
+
+			void setUp(SimMap map, long seed) {
+				SimGame[] made = new SimGame[1];
+				learner = learnerGame(map, seed, made);
+				game = made[0];
+			}
+
+			void run() {
+				learner.placeArmies(game.getPlayerIncome(0));
+				sink = game.getArmies(0);
+			}
+		});
+
+		cases.add(new Case("SimLearner.attackPhase") {
+			SimLearner learner;
+			SimGame game;
+
+			void setUp(SimMap map, long seed) {
+				SimGame[] made = new SimGame[1];
+				learner = learnerGame(map, seed, made);
+				game = made[0];
+				learner.placeArmies(game.getPlayerIncome(0));
+			}
+
+			void run() {
+				learner.attackPhase();
+				sink = game.getPlayerCountries(0);
+			}
+		});
+
+		cases.add(new Case("SimLearner.fortifyPhase") {
+			SimLearner learner;
+			SimGame game;
+
+			void setUp(SimMap map, long seed) {
+				SimGame[] made = new SimGame[1];
+				learner = learnerGame(map, seed, made);
+				game = made[0];
+				learner.placeArmies(game.getPlayerIncome(0));
+			}
+
+			void run() {
+				learner.fortifyPhase();
+				sink = game.getArmies(0);
+			}
+		});
+
+		// the traversal of SmartAgentBase.fortifyCluster: the cluster around seat 0's strongest country, breadth first
+		cases.add(new Case("ClusterWalk cluster fill") {
+			SimGame game;
+			ClusterWalk walk;
+			int root;
+
+			void setUp(SimMap map, long seed) {
+				SimGame[] made = new SimGame[1];
+				learnerGame(map, seed, made);
+				game = made[0];
+				walk = new ClusterWalk(map.getNumberOfCountries());
+				root = 0;
+				for (int code = 0; code < map.getNumberOfCountries(); code++) {
+					if (game.getOwner(code) == 0 && game.getArmies(code) > game.getArmies(root)) {
+						root = code;
+					}
+				}
+			}
+
+			void run() {
+				walk.clear();
+				walk.visit(root);
+				while (walk.hasNext()) {
+					int[] adjoining = game.getAdjoining(walk.next());
+					for (int i = 0; i < adjoining.length; i++) {
+						if (game.getOwner(adjoining[i]) == game.getOwner(root)) {
+							walk.visit(adjoining[i]);
+						}
+					}
+				}
+				sink = walk.size();
+			}
+		});
+
+		cases.add(new Case("BoardDistances.new") {
+			SimMap map;
+
+			void setUp(SimMap map, long seed) {
+				this.map = map;
+			}
+
+			void run() {
+				sink = new BoardDistances(map.getAdjoiningLists()).size();
+			}
+		});
+
+		return cases;
+	}
+}
@@ -0,0 +1,441 @@
+package com.sillysoft.lux.agent;
+
+import java.util.Random;
+
+/**
+ * A headless game of Risk played between SimPlayers on a SimMap, for training and testing agents without the Lux engine.
+ *
+ * The query and action methods follow the Board methods of the same names, with countries given by code.
+ * All randomness (dealing countries, dice and cards) comes from one Random made from the seed, so a game
+ * with the same map, players and seed is always played the same way.
+ *
+ * The rules are the usual ones: countries are dealt out at the start, income is a third of the countries owned
+ * (at least 3) plus continent bonuses, a card is earned for conquering at least one country in a turn,
+ * and cashing a set of cards is worth 4, 6, 8, 10, 12, 15 and then 5 more for each later set.
+ * A game that goes past the turn limit is a draw.
+ *
+ * The simulator is a source root of its own, RiskAI/sim, built after RiskAI/src and with it on the classpath.
+ * Nothing in the agent depends on it, and it keeps its own state in primitive arrays instead of making
+ * Lux Boards and Countries, so it can never stop the agent from compiling against the engine.
+ */
+public class SimGame {
+
+	/** Returned by attack() when the defending country was conquered. */
+	public static final int ATTACKER_WON = 7;
+	/** Returned by attack() when the attacker was reduced to one army. */
+	public static final int DEFENDER_WON = 13;
+
+	public static final int DEFAULT_TURN_LIMIT = 500;
+
+	// card symbols
+	private static final int SYMBOLS = 3;
+
+	private final SimMap map;
+	private final SimPlayer[] players;
+	private final Random rand;
+	private int turnLimit = DEFAULT_TURN_LIMIT;
+
+	private final int[] owner;
+	private final int[] armies;
+	// armies that arrived by fortification this turn, which cannot move again
+	private final int[] arrived;
+	private final int[] countriesOwned;
+	// the number of cards of each symbol held by each player
+	private final int[][] cards;
+
+	private int currentPlayer;
+	private int turnCount;
+	private int setsCashed;
+	private int playersLeft;
+	private boolean conqueredThisTurn;
+	private int armiesToPlace;
+
+	public SimGame(SimMap map, SimPlayer[] players, long seed) {
+		this.map = map;
+		this.players = players;
+		this.rand = new Random(seed);
+		int size = map.getNumberOfCountries();
+		owner = new int[size];
+		armies = new int[size];
+		arrived = new int[size];
+		countriesOwned = new int[players.length];
+		cards = new int[players.length][SYMBOLS];
+	}
+
+	public void setTurnLimit(int turnLimit) {
+		this.turnLimit = turnLimit;
+	}
+
+	/**
+	 * Deal out the countries and play the game to the end.
+	 * @return The ID of the winner, or -1 if the turn limit was reached
+	 */
+	public int play() {
+		setUp();
+		int winner = playUntil(turnLimit);
+		for (int i = 0; i < players.length; i++) {
+			players[i].gameOver(i == winner);
+		}
+		return winner;
+	}
+
+	/**
+	 * Play turns until the end of round <lastTurn>, or until one player is left.
+	 * @return The ID of the winner, or -1 if the game is not over
+	 */
+	public int playUntil(int lastTurn) {
+		int winner = -1;
+		while (turnCount <= lastTurn) {
+			if (countriesOwned[currentPlayer] > 0) {
+				takeTurn(players[currentPlayer]);
+				if (playersLeft == 1) {
+					winner = currentPlayer;
+					break;
+				}
+			}
+			currentPlayer++;
+			if (currentPlayer == players.length) {
+				currentPlayer = 0;
+				turnCount++;
+			}
+		}
+		return winner;
+	}
+
+	/** Deal out the countries and let every player place its initial armies, ready for the first turn. */
+	public void setUp() {
+		deal();
+		for (int i = 0; i < players.length; i++) {
+			players[i].setPrefs(i, this);
+		}
+		for (int i = 0; i < players.length; i++) {
+			currentPlayer = i;
+			int initial = initialArmies(players.length) - countriesOwned[i];
+			if (initial > 0) {
+				armiesToPlace = initial;
+				players[i].placeInitialArmies(initial);
+				placeLeftovers();
+			}
+		}
+		currentPlayer = 0;
+		turnCount = 1;
+	}
+
+	/**
+	 * Make it <player>'s turn with <numberOfArmies> to place, without running any of its phases.
+	 * This lets benchmarks call a single phase of a player on a set up board.
+	 */
+	public void beginTurn(int player, int numberOfArmies) {
+		currentPlayer = player;
+		conqueredThisTurn = false;
+		armiesToPlace = numberOfArmies;
+		for (int i = 0; i < arrived.length; i++) {
+			arrived[i] = 0;
+		}
+	}
+
+	private void takeTurn(SimPlayer player) {
+		conqueredThisTurn = false;
+		int income = getPlayerIncome(currentPlayer);
+		if (hasSet(currentPlayer) && (getPlayerCards(currentPlayer) >= 5 || player.cardsPhase())) {
+			income += cashSet(currentPlayer);
+		}
+		armiesToPlace = income;
+		player.placeArmies(income);
+		placeLeftovers();
+
+		player.attackPhase();
+		if (playersLeft == 1) {
+			return;
+		}
+		if (conqueredThisTurn) {
+			cards[currentPlayer][rand.nextInt(SYMBOLS)]++;
+		}
+
+		for (int i = 0; i < arrived.length; i++) {
+			arrived[i] = 0;
+		}
+		player.fortifyPhase();
+	}
+
+	// put countries out round robin in a random order, with one army each
+	private void deal() {
+		int size = owner.length;
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		for (int i = 0; i < size; i++) {
+			owner[order[i]] = i % players.length;
+			armies[order[i]] = 1;
+			countriesOwned[i % players.length]++;
+		}
+		playersLeft = 0;
+		for (int i = 0; i < players.length; i++) {
+			if (countriesOwned[i] > 0) {
+				playersLeft++;
+			}
+		}
+	}
+
+	private static int initialArmies(int numberOfPlayers) {
+		switch (numberOfPlayers) {
+			case 2: return 40;
+			case 3: return 35;
+			case 4: return 30;
+			case 5: return 25;
+			default: return 20;
+		}
+	}
+
+	// armies a player did not place go to its first country
+	private void placeLeftovers() {
+		if (armiesToPlace > 0) {
+			for (int i = 0; i < owner.length; i++) {
+				if (owner[i] == currentPlayer) {
+					armies[i] += armiesToPlace;
+					break;
+				}
+			}
+			armiesToPlace = 0;
+		}
+	}
+
+	private boolean hasSet(int player) {
+		int[] held = cards[player];
+		return held[0] >= 3 || held[1] >= 3 || held[2] >= 3 || (held[0] > 0 && held[1] > 0 && held[2] > 0);
+	}
+
+	// cash one set, preferring one of each symbol, and return its value
+	private int cashSet(int player) {
+		int[] held = cards[player];
+		if (held[0] > 0 && held[1] > 0 && held[2] > 0) {
+			held[0]--;
+			held[1]--;
+			held[2]--;
+		} else {
+			for (int i = 0; i < SYMBOLS; i++) {
+				if (held[i] >= 3) {
+					held[i] -= 3;
+					break;
+				}
+			}
+		}
+		int value = getNextCardSetValue();
+		setsCashed++;
+		return value;
+	}
+
+	public SimMap getMap() {
+		return map;
+	}
+
+	public int getNumberOfCountries() {
+		return owner.length;
+	}
+
+	public int getNumberOfContinents() {
+		return map.getNumberOfContinents();
+	}
+
+	public int getOwner(int code) {
+		return owner[code];
+	}
+
+	public int getArmies(int code) {
+		return armies[code];
+	}
+
+	/** The number of armies that can still be fortified out of <code> this turn. */
+	public int getMoveableArmies(int code) {
+		return Math.max(0, Math.min(armies[code] - 1, armies[code] - arrived[code]));
+	}
+
+	public int getContinent(int code) {
+		return map.getContinent(code);
+	}
+
+	/** The codes of the countries bordering <code>. The array is shared and must not be modified. */
+	public int[] getAdjoining(int code) {
+		return map.getAdjoining(code);
+	}
+
+	public int getContinentBonus(int cont) {
+		return map.getContinentBonus(cont);
+	}
+
+	public int getPlayerIncome(int player) {
+		int income = Math.max(3, countriesOwned[player] / 3);
+		for (int cont = 0; cont < map.getNumberOfContinents(); cont++) {
+			if (playerOwnsContinent(player, cont)) {
+				income += map.getContinentBonus(cont);
+			}
+		}
+		return income;
+	}
+
+	public boolean playerOwnsContinent(int player, int cont) {
+		for (int i = 0; i < owner.length; i++) {
+			if (map.getContinent(i) == cont && owner[i] != player) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getPlayerCards(int player) {
+		return cards[player][0] + cards[player][1] + cards[player][2];
+	}
+
+	public int getPlayerCountries(int player) {
+		return countriesOwned[player];
+	}
+
+	public int getTurnCount() {
+		return turnCount;
+	}
+
+	public int getNextCardSetValue() {
+		if (setsCashed < 5) {
+			return 4 + 2 * setsCashed;
+		}
+		return 15 + 5 * (setsCashed - 5);
+	}
+
+	public int getNumberOfPlayers() {
+		return players.length;
+	}
+
+	public int getNumberOfPlayersLeft() {
+		return playersLeft;
+	}
+
+	public boolean tookOverACountry() {
+		return conqueredThisTurn;
+	}
+
+	/**
+	 * Place armies on a country of the current player.
+	 * Placing more armies than are left to place only places the ones that are left.
+	 */
+	public void placeArmies(int numberOfArmies, int code) {
+		if (owner[code] != currentPlayer || numberOfArmies <= 0) {
+			return;
+		}
+		int placed = Math.min(numberOfArmies, armiesToPlace);
+		armies[code] += placed;
+		armiesToPlace -= placed;
+	}
+
+	/**
+	 * Attack <defender> from <attacker>, with as many dice as the armies allow.
+	 * @param attackTillDead Keep rolling until one side wins, instead of rolling once
+	 * @return ATTACKER_WON, DEFENDER_WON, or 0 if the attack was not allowed or both sides still stand
+	 */
+	public int attack(int attacker, int defender, boolean attackTillDead) {
+		if (owner[attacker] != currentPlayer || owner[defender] == currentPlayer
+				|| armies[attacker] < 2 || !map.canGoto(attacker, defender)) {
+			return 0;
+		}
+		int attackDice;
+		do {
+			attackDice = Math.min(3, armies[attacker] - 1);
+			roll(attacker, defender, attackDice);
+		} while (attackTillDead && armies[attacker] > 1 && armies[defender] > 0);
+
+		if (armies[defender] == 0) {
+			conquer(attacker, defender, attackDice);
+			return ATTACKER_WON;
+		} else if (armies[attacker] == 1) {
+			return DEFENDER_WON;
+		}
+		return 0;
+	}
+
+	// roll the dice once and remove the losses
+	private void roll(int attacker, int defender, int attackDice) {
+		int defendDice = Math.min(2, armies[defender]);
+		int a1 = 0, a2 = 0;
+		for (int i = 0; i < attackDice; i++) {
+			int die = rand.nextInt(6) + 1;
+			if (die > a1) {
+				a2 = a1;
+				a1 = die;
+			} else if (die > a2) {
+				a2 = die;
+			}
+		}
+		int d1 = rand.nextInt(6) + 1;
+		int d2 = 0;
+		if (defendDice == 2) {
+			d2 = rand.nextInt(6) + 1;
+			if (d2 > d1) {
+				int swap = d1;
+				d1 = d2;
+				d2 = swap;
+			}
+		}
+		if (a1 > d1) {
+			armies[defender]--;
+		} else {
+			armies[attacker]--;
+		}
+		if (attackDice >= 2 && defendDice == 2) {
+			if (a2 > d2) {
+				armies[defender]--;
+			} else {
+				armies[attacker]--;
+			}
+		}
+	}
+
+	private void conquer(int attacker, int defender, int attackDice) {
+		int loser = owner[defender];
+		owner[defender] = currentPlayer;
+		countriesOwned[currentPlayer]++;
+		countriesOwned[loser]--;
+		conqueredThisTurn = true;
+
+		// the attacking dice move in, and the player may move more
+		int moved = Math.min(attackDice, armies[attacker] - 1);
+		armies[attacker] -= moved;
+		armies[defender] = moved;
+		int extra = players[currentPlayer].moveArmiesIn(attacker, defender);
+		extra = Math.max(0, Math.min(extra, armies[attacker] - 1));
+		armies[attacker] -= extra;
+		armies[defender] += extra;
+
+		if (countriesOwned[loser] == 0) {
+			playersLeft--;
+			for (int i = 0; i < SYMBOLS; i++) {
+				cards[currentPlayer][i] += cards[loser][i];
+				cards[loser][i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Move armies between two bordering countries of the current player.
+	 * Only armies that have not already been fortified this turn can move, and one army always stays behind.
+	 * @return The number of armies moved
+	 */
+	public int fortifyArmies(int numberOfArmies, int from, int to) {
+		if (owner[from] != currentPlayer || owner[to] != currentPlayer || !map.canGoto(from, to)) {
+			return 0;
+		}
+		int moved = Math.min(numberOfArmies, getMoveableArmies(from));
+		if (moved <= 0) {
+			return 0;
+		}
+		armies[from] -= moved;
+		armies[to] += moved;
+		arrived[to] += moved;
+		return moved;
+	}
+}
@@ -0,0 +1,335 @@
+package com.sillysoft.lux.agent;
+
+import java.util.Random;
+
+/**
+ * Learner's strategy, played in the headless simulator.
+ *
+ * The scoring formulas, the choice of targets and the way weights are picked from the rules are the same
+ * as in Learner, but work on a SimGame. Weights are picked from rule tables handed in by the caller,
+ * with a Random from the caller, so a training run with a fixed seed always plays out the same way.
+ * After the game the caller can adjust the ranks of the rules that were played with adjustRanks().
+ */
+public class SimLearner implements SimPlayer {
+
+	private static final int LETTERS = 13; // A-M
+	private static final float DEFAULT_WEIGHT = 1.0f;
+	private static final float PLAUSIBLE_ATTACK_ODDS = 0.5f;
+
+	private final RuleTable[] rules;
+	private final Random rand;
+	private final float explorationThreshold;
+
+	private int ID;
+	private SimGame game;
+	private int numCountries;
+	private BoardDistances distances;
+
+	// values used in tactics analysis. Like Learner's, they are never changed from 0
+	private float recklessness;
+	private float recklessFortifyThreshold;
+
+	final float[] deployWeights = new float[LETTERS];
+	final float[] attackWeights = new float[LETTERS];
+	final float[] fortifyWeights = new float[LETTERS];
+	private boolean picked;
+
+	/**
+	 * @param rules The deploy, attack and fortify rules, indexed by RuleSet.DEPLOY etc. They are only read.
+	 */
+	public SimLearner(RuleTable[] rules, Random rand, float explorationThreshold) {
+		this.rules = rules;
+		this.rand = rand;
+		this.explorationThreshold = explorationThreshold;
+	}
+
+	public void setPrefs(int id, SimGame game) {
+		this.ID = id;
+		this.game = game;
+		numCountries = game.getNumberOfCountries();
+		distances = game.getMap().getDistances();
+		picked = false;
+	}
+
+	public void placeInitialArmies(int numberOfArmies) {
+		placeArmies(numberOfArmies);
+	}
+
+	public boolean cardsPhase() {
+		return recklessness > 0; // Learner only cashes early when reckless, otherwise the game cashes at five cards
+	}
+
+	public void placeArmies(int numberOfArmies) {
+		pickWeights();
+		float currentRecklessness = currentRecklessness(deployWeights);
+		ArmyAllocator allocator = new ArmyAllocator(numCountries);
+		for (int code = 0; code < numCountries; code++) {
+			if (game.getOwner(code) == ID) {
+				float weight = currentRecklessness * calculateImportance(code, deployWeights) * currentRecklessness;
+				allocator.addCandidate(code, weight, calculateVulnerability(code, deployWeights));
+			}
+		}
+		allocator.allocate(numberOfArmies, deployWeights[3]);
+		for (int i = 0; i < allocator.getNumberOfCandidates(); i++) {
+			if (allocator.getPlaced(i) > 0) {
+				game.placeArmies(allocator.getPlaced(i), allocator.getCode(i));
+			}
+		}
+	}
+
+	public void attackPhase() {
+		boolean stillAttacking = true;
+		while (stillAttacking) {
+			// the weakest enemy country next to any of our countries with 4 or more armies
+			int attacker = -1;
+			int target = -1;
+			float lowestStrategicValue = 1000000;
+			float currentRecklessness = currentRecklessness(attackWeights);
+			for (int us = 0; us < numCountries; us++) {
+				if (game.getOwner(us) != ID || game.getArmies(us) < 4) {
+					continue;
+				}
+				int[] adjoining = game.getAdjoining(us);
+				for (int i = 0; i < adjoining.length; i++) {
+					int them = adjoining[i];
+					if (game.getOwner(them) == ID || !plausibleAttack(us, them)) {
+						continue;
+					}
+					float strategicValue = calculateStrategicValue(them, attackWeights, currentRecklessness);
+					if (strategicValue < lowestStrategicValue) {
+						lowestStrategicValue = strategicValue;
+						attacker = us;
+						target = them;
+					}
+				}
+			}
+			if (target != -1) {
+				game.attack(attacker, target, false);
+			} else {
+				stillAttacking = false;
+			}
+		}
+	}
+
+	// like Learner.plausibleAttack()
+	private boolean plausibleAttack(int attacker, int target) {
+		return BattleOdds.getDefault().getWinProbability(game.getArmies(attacker), game.getArmies(target)) >= PLAUSIBLE_ATTACK_ODDS;
+	}
+
+	public int moveArmiesIn(int attacker, int defender) {
+		if (hasEnemyNeighbor(defender)) {
+			return 0;
+		}
+		return game.getArmies(attacker) - 1;
+	}
+
+	public void fortifyPhase() {
+		float currentRecklessness = currentRecklessness(fortifyWeights);
+		for (int us = 0; us < numCountries; us++) {
+			if (game.getOwner(us) != ID || game.getArmies(us) < 2) {
+				continue;
+			}
+			int[] adjoining = game.getAdjoining(us);
+			int fortifyTarget = -1;
+			if (recklessness > recklessFortifyThreshold) {
+				// move to attack position
+				float highestStrategicValue = calculateStrategicValue(us, fortifyWeights, currentRecklessness);
+				for (int i = 0; i < adjoining.length; i++) {
+					if (game.getOwner(adjoining[i]) != ID) {
+						continue;
+					}
+					float strategicValue = calculateStrategicValue(adjoining[i], fortifyWeights, currentRecklessness);
+					if (strategicValue > highestStrategicValue) {
+						fortifyTarget = adjoining[i];
+						highestStrategicValue = strategicValue;
+					}
+				}
+			} else {
+				// move to defend
+				float highestVulnerability = calculateVulnerability(us, fortifyWeights);
+				for (int i = 0; i < adjoining.length; i++) {
+					if (game.getOwner(adjoining[i]) != ID) {
+						continue;
+					}
+					float vulnerability = calculateVulnerability(adjoining[i], fortifyWeights);
+					if (vulnerability > highestVulnerability) {
+						fortifyTarget = adjoining[i];
+						highestVulnerability = vulnerability;
+					}
+				}
+			}
+			if (fortifyTarget != -1) {
+				game.fortifyArmies(game.getMoveableArmies(us), us, fortifyTarget);
+			}
+		}
+	}
+
+	public void gameOver(boolean won) {
+	}
+
+	/**
+	 * Change the rank of every rule this player last played with, in the same way as Learner.adjustRules().
+	 * @param tables The tables to change, which should hold the same rules as the ones this player picked from
+	 */
+	public void adjustRanks(RuleTable[] tables, int adjustment) {
+		if (!picked) {
+			return;
+		}
+		tables[RuleSet.DEPLOY].adjustRanks(deployWeights, adjustment);
+		tables[RuleSet.ATTACK].adjustRanks(attackWeights, adjustment);
+		tables[RuleSet.FORTIFY].adjustRanks(fortifyWeights, adjustment);
+	}
+
+	// like Learner.getWeightValues(), once per turn
+	private void pickWeights() {
+		pickWeights(rules[RuleSet.DEPLOY], deployWeights);
+		pickWeights(rules[RuleSet.ATTACK], attackWeights);
+		pickWeights(rules[RuleSet.FORTIFY], fortifyWeights);
+		picked = true;
+	}
+
+	private void pickWeights(RuleTable table, float[] weights) {
+		for (int i = 0; i < LETTERS; i++) {
+			int rule = table.pickRule(i, rand, explorationThreshold);
+			weights[i] = rule == -1 ? DEFAULT_WEIGHT : table.getWeight(rule);
+		}
+	}
+
+	// the scoring formulas of Learner, without its cache. Some are package-private so SimBench can time them
+
+	private boolean hasEnemyNeighbor(int code) {
+		int[] adjoining = game.getAdjoining(code);
+		for (int i = 0; i < adjoining.length; i++) {
+			if (game.getOwner(adjoining[i]) != game.getOwner(code)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private float howDivided(int code, float[] weights) {
+		int[] adjoining = game.getAdjoining(code);
+		int owners = 0;
+		for (int i = 0; i < adjoining.length; i++) {
+			int other = game.getOwner(adjoining[i]);
+			if (other == game.getOwner(code)) {
+				continue;
+			}
+			boolean seen = false;
+			for (int j = 0; j < i; j++) {
+				if (game.getOwner(adjoining[j]) == other) {
+					seen = true;
+					break;
+				}
+			}
+			if (!seen) {
+				owners++;
+			}
+		}
+		return owners * weights[2];
+	}
+
+	private float calculateWeightedTroopValue(int src, int dest, float[] weights) {
+		int distance = distances.routeLength(src, dest);
+		if (distance == BoardDistances.UNREACHABLE) {
+			return 0;
+		}
+		return weights[3] * game.getArmies(dest) / (float) distance;
+	}
+
+	float calculateStrategicValue(int code, float[] weights, float currentRecklessness) {
+		return (currentRecklessness * calculateImportance(code, weights)) / (calculateVulnerability(code, weights) / currentRecklessness);
+	}
+
+	float currentRecklessness(float[] weights) {
+		return calculateRecklessness(calculateAdvantage(ID, weights));
+	}
+
+	float calculateVulnerability(int code, float[] weights) {
+		float enemyTroops = 0;
+		float friendlyTroops = 0;
+		int enemyArmies = 0;
+		for (int i = 0; i < numCountries; i++) {
+			if (game.getOwner(i) != ID) {
+				enemyTroops += calculateWeightedTroopValue(code, i, weights);
+				enemyArmies += game.getArmies(i);
+			} else {
+				friendlyTroops += calculateWeightedTroopValue(code, i, weights);
+			}
+		}
+		enemyTroops += enemyArmies;
+		return (enemyTroops / howDivided(code, weights)) - friendlyTroops;
+	}
+
+	private float calculateThreat(int player, float[] weights) {
+		return weights[7] * game.getPlayerIncome(player) + weights[8] * game.getPlayerCards(player);
+	}
+
+	private float calculateRecklessness(float advantage) {
+		return advantage + game.getTurnCount() + game.getNextCardSetValue();
+	}
+
+	private float calculateImportance(int code, float[] weights) {
+		int countryOwner = game.getOwner(code);
+		int continent = game.getContinent(code);
+		int countryCount = 0;
+		int ownedCount = 0;
+		for (int i = 0; i < numCountries; i++) {
+			if (game.getContinent(i) == continent) {
+				countryCount++;
+				if (game.getOwner(i) == countryOwner) {
+					ownedCount++;
+				}
+			}
+		}
+		float percentageOfContinent = 1f / countryCount;
+		float percentageOwned = (float) ownedCount / countryCount;
+		return weights[0] * percentageOfContinent + weights[1] * percentageOwned;
+	}
+
+	private float calculateStability(int playerID, float[] weights) {
+		float greatestVulnerability = -100000;
+		float continentsHeld = 0;
+		for (int cont = 0; cont < game.getNumberOfContinents(); cont++) {
+			if (game.playerOwnsContinent(playerID, cont)) {
+				continentsHeld++;
+				for (int code = 0; code < numCountries; code++) {
+					if (game.getContinent(code) == cont && hasNeighborOutside(code, cont)) {
+						float vulnerability = calculateVulnerability(code, weights);
+						if (vulnerability > greatestVulnerability) {
+							greatestVulnerability = vulnerability;
+						}
+					}
+				}
+			}
+		}
+		int armiesCount = 0;
+		for (int code = 0; code < numCountries; code++) {
+			if (game.getOwner(code) == playerID) {
+				armiesCount += game.getArmies(code);
+			}
+		}
+		return (weights[4] * continentsHeld + weights[5] * armiesCount) / (weights[6] * greatestVulnerability);
+	}
+
+	private boolean hasNeighborOutside(int code, int cont) {
+		int[] adjoining = game.getAdjoining(code);
+		for (int i = 0; i < adjoining.length; i++) {
+			if (game.getContinent(adjoining[i]) != cont) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private float calculateAdvantage(int playerID, float[] weights) {
+		float stability = calculateStability(playerID, weights);
+		float totalThreat = 0;
+		for (int player = 0; player < game.getNumberOfPlayers(); player++) {
+			if (player != playerID && game.getPlayerCountries(player) > 0) {
+				totalThreat += calculateThreat(player, weights);
+			}
+		}
+		return weights[9] * stability - weights[10] * totalThreat;
+	}
+}
@@ -0,0 +1,218 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * The fixed layout of a map for the headless simulator: country names, which continent each country is in,
+ * continent bonuses and the borders between countries.
+ *
+ * A few maps are built in, so training and benchmarks can run without the Lux map files:
+ *   "classic" - the 42 country world map of the original board game
+ *   "small", "large" and "huge" - generated grid maps of 12, 150 and 500 countries
+ * Any other grid size can be made with grid().
+ */
+public class SimMap {
+
+	private final String name;
+	private final String[] countryNames;
+	private final int[] continent;
+	private final int[] continentBonus;
+	private final int[][] adjoining;
+	private BoardDistances distances;
+
+	/**
+	 * @param adjoining For each country, the codes of the countries it borders.
+	 *                  Borders go one way, so a two-way border must be listed on both countries.
+	 */
+	public SimMap(String name, String[] countryNames, int[] continent, int[] continentBonus, int[][] adjoining) {
+		this.name = name;
+		this.countryNames = countryNames;
+		this.continent = continent;
+		this.continentBonus = continentBonus;
+		this.adjoining = adjoining;
+	}
+
+	/** Get one of the built-in maps by name. */
+	public static SimMap named(String mapName) {
+		if (mapName.equals("classic")) {
+			return classic();
+		} else if (mapName.equals("small")) {
+			return grid(12, 4);
+		} else if (mapName.equals("large")) {
+			return grid(150, 10);
+		} else if (mapName.equals("huge")) {
+			return grid(500, 20);
+		}
+		throw new IllegalArgumentException("Unknown map " + mapName);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getNumberOfCountries() {
+		return continent.length;
+	}
+
+	public int getNumberOfContinents() {
+		return continentBonus.length;
+	}
+
+	public String getCountryName(int code) {
+		return countryNames[code];
+	}
+
+	public int getContinent(int code) {
+		return continent[code];
+	}
+
+	public int getContinentBonus(int cont) {
+		return continentBonus[cont];
+	}
+
+	/** The codes of the countries that <code> can attack or fortify into. The array is shared and must not be modified. */
+	public int[] getAdjoining(int code) {
+		return adjoining[code];
+	}
+
+	/** The adjacency lists of every country. The arrays are shared and must not be modified. */
+	public int[][] getAdjoiningLists() {
+		return adjoining;
+	}
+
+	/** The hop distances between the countries, built the first time they are asked for and shared by every game on this map. */
+	public synchronized BoardDistances getDistances() {
+		if (distances == null) {
+			distances = new BoardDistances(adjoining);
+		}
+		return distances;
+	}
+
+	public boolean canGoto(int from, int to) {
+		int[] neighbors = adjoining[from];
+		for (int i = 0; i < neighbors.length; i++) {
+			if (neighbors[i] == to) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A rectangular grid of countries where each country borders the ones above, below, left and right of it.
+	 * Continents are runs of <countriesPerContinent> countries in row order, each worth half its size.
+	 */
+	public static SimMap grid(int numberOfCountries, int countriesPerContinent) {
+		int width = (int) Math.ceil(Math.sqrt(numberOfCountries));
+		String[] names = new String[numberOfCountries];
+		int[] continent = new int[numberOfCountries];
+		int numberOfContinents = (numberOfCountries + countriesPerContinent - 1) / countriesPerContinent;
+		int[] bonus = new int[numberOfContinents];
+		int[][] adjoining = new int[numberOfCountries][];
+		int[] neighbors = new int[4];
+		for (int code = 0; code < numberOfCountries; code++) {
+			names[code] = "Country " + code;
+			continent[code] = code / countriesPerContinent;
+			bonus[continent[code]]++;
+			int row = code / width;
+			int column = code % width;
+			int count = 0;
+			if (column > 0) {
+				neighbors[count++] = code - 1;
+			}
+			if (column < width - 1 && code + 1 < numberOfCountries) {
+				neighbors[count++] = code + 1;
+			}
+			if (row > 0) {
+				neighbors[count++] = code - width;
+			}
+			if (code + width < numberOfCountries) {
+				neighbors[count++] = code + width;
+			}
+			adjoining[code] = new int[count];
+			System.arraycopy(neighbors, 0, adjoining[code], 0, count);
+		}
+		for (int i = 0; i < numberOfContinents; i++) {
+			bonus[i] = Math.max(1, bonus[i] / 2);
+		}
+		return new SimMap("grid" + numberOfCountries, names, continent, bonus, adjoining);
+	}
+
+	/** The 42 country world map. */
+	public static SimMap classic() {
+		String[] names = {
+			"Alaska", "Northwest Territory", "Greenland", "Alberta", "Ontario", "Quebec", "Western United States", "Eastern United States", "Central America",
+			"Venezuela", "Peru", "Brazil", "Argentina",
+			"Iceland", "Great Britain", "Scandinavia", "Northern Europe", "Western Europe", "Southern Europe", "Ukraine",
+			"North Africa", "Egypt", "East Africa", "Congo", "South Africa", "Madagascar",
+			"Ural", "Siberia", "Yakutsk", "Kamchatka", "Irkutsk", "Mongolia", "Japan", "Afghanistan", "China", "Middle East", "India", "Siam",
+			"Indonesia", "New Guinea", "Western Australia", "Eastern Australia"};
+		int[] continent = {
+			0, 0, 0, 0, 0, 0, 0, 0, 0,
+			1, 1, 1, 1,
+			2, 2, 2, 2, 2, 2, 2,
+			3, 3, 3, 3, 3, 3,
+			4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4,
+			5, 5, 5, 5};
+		int[] bonus = {5, 2, 5, 3, 7, 2};
+		int[][] borders = {
+			{0, 1}, {0, 3}, {0, 29},
+			{1, 3}, {1, 4}, {1, 2},
+			{2, 4}, {2, 5}, {2, 13},
+			{3, 4}, {3, 6},
+			{4, 5}, {4, 6}, {4, 7},
+			{5, 7},
+			{6, 7}, {6, 8},
+			{7, 8},
+			{8, 9},
+			{9, 10}, {9, 11},
+			{10, 11}, {10, 12},
+			{11, 12}, {11, 20},
+			{13, 14}, {13, 15},
+			{14, 15}, {14, 16}, {14, 17},
+			{15, 16}, {15, 19},
+			{16, 17}, {16, 18}, {16, 19},
+			{17, 18}, {17, 20},
+			{18, 19}, {18, 20}, {18, 21}, {18, 35},
+			{19, 26}, {19, 33}, {19, 35},
+			{20, 21}, {20, 22}, {20, 23},
+			{21, 22}, {21, 35},
+			{22, 23}, {22, 24}, {22, 25}, {22, 35},
+			{23, 24},
+			{24, 25},
+			{26, 27}, {26, 34}, {26, 33},
+			{27, 28}, {27, 30}, {27, 31}, {27, 34},
+			{28, 29}, {28, 30},
+			{29, 30}, {29, 31}, {29, 32},
+			{30, 31},
+			{31, 34}, {31, 32},
+			{33, 34}, {33, 36}, {33, 35},
+			{34, 36}, {34, 37},
+			{35, 36},
+			{36, 37},
+			{37, 38},
+			{38, 39}, {38, 40},
+			{39, 40}, {39, 41},
+			{40, 41}};
+		return new SimMap("classic", names, continent, bonus, twoWay(names.length, borders));
+	}
+
+	// turn a list of two-way borders into adjacency lists
+	private static int[][] twoWay(int numberOfCountries, int[][] borders) {
+		int[] degree = new int[numberOfCountries];
+		for (int i = 0; i < borders.length; i++) {
+			degree[borders[i][0]]++;
+			degree[borders[i][1]]++;
+		}
+		int[][] result = new int[numberOfCountries][];
+		for (int i = 0; i < numberOfCountries; i++) {
+			result[i] = new int[degree[i]];
+			degree[i] = 0;
+		}
+		for (int i = 0; i < borders.length; i++) {
+			int a = borders[i][0];
+			int b = borders[i][1];
+			result[a][degree[a]++] = b;
+			result[b][degree[b]++] = a;
+		}
+		return result;
+	}
+}
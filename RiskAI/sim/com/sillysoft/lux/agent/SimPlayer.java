@@ -0,0 +1,33 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * A player in the headless simulator. The methods are called in the same order as the LuxAgent methods of the
+ * same names, but the player works with a SimGame and country codes instead of a Board and Country objects.
+ */
+public interface SimPlayer {
+
+	/** Called once before the game starts. */
+	public void setPrefs(int id, SimGame game);
+
+	public void placeInitialArmies(int numberOfArmies);
+
+	/**
+	 * Called at the start of each turn while the player holds a set of cards and fewer than five cards.
+	 * (With five or more cards the game cashes a set automatically.)
+	 * @return true to cash a set now
+	 */
+	public boolean cardsPhase();
+
+	/** Place <numberOfArmies> with SimGame.placeArmies(). Any armies left unplaced are put on the player's first country. */
+	public void placeArmies(int numberOfArmies);
+
+	public void attackPhase();
+
+	/** @return The number of extra armies to move from <attacker> into <defender> after conquering it. */
+	public int moveArmiesIn(int attacker, int defender);
+
+	public void fortifyPhase();
+
+	/** Called for every player when the game is over. <won> is false for a draw. */
+	public void gameOver(boolean won);
+}
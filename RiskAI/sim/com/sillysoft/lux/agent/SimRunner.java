@@ -0,0 +1,161 @@
+package com.sillysoft.lux.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Trains Learner's rules by playing headless games of SimLearner against SimBasicPlayers.
+ *
+ * Usage: java com.sillysoft.lux.agent.SimRunner [options]
+ *   --map classic|small|large|huge  the map to play on (default classic)
+ *   --games N                       the number of games (default 100)
+ *   --players N                     players per game, one of which is the learner (default 4)
+ *   --seed N                        the seed of the first game; game i uses seed + i (default 1)
+ *   --rules path                    a rules.txt to train; the learned rules are saved to its binary store
+ *   --turns N                       the turn limit of each game (default 500)
+ *   --threads N                     the number of games played at once (default: one per processor)
+ *   --batch N                       the number of games played against the same rules (default 32)
+ *
+ * Games are played in batches. Every game in a batch is independent: it has its own players, its own seeded
+ * Randoms, and reads the same unchanging copy of the rules, so the games of a batch can be played on any
+ * number of threads. When a batch is done its results are merged into the rules by this thread alone, in game order.
+ * No player reads the clock either (SimLearner has no PhaseBudget), so a run gives the same results for the same
+ * seed and batch size, whatever the number of threads or the load on the machine.
+ *
+ * In the merge, the ranks of the rules each learner played with are lowered by one for a win (better)
+ * and raised by one for a loss or draw. The learner's seat moves around the table from game to game.
+ */
+public class SimRunner {
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		String mapName = "classic";
+		int games = 100;
+		int numberOfPlayers = 4;
+		long seed = 1;
+		String rulesPath = null;
+		int turnLimit = SimGame.DEFAULT_TURN_LIMIT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int batch = 32;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--map")) {
+				mapName = args[i + 1];
+			} else if (args[i].equals("--games")) {
+				games = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--players")) {
+				numberOfPlayers = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--seed")) {
+				seed = Long.parseLong(args[i + 1]);
+			} else if (args[i].equals("--rules")) {
+				rulesPath = args[i + 1];
+			} else if (args[i].equals("--turns")) {
+				turnLimit = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--threads")) {
+				threads = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--batch")) {
+				batch = Integer.parseInt(args[i + 1]);
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		SimMap map = SimMap.named(mapName);
+		RuleTable[] rules = new RuleTable[RuleSet.PHASES];
+		if (rulesPath != null) {
+			RuleSet ruleSet = RuleSet.load(rulesPath);
+			for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+				rules[phase] = ruleSet.copyTable(phase);
+			}
+		} else {
+			RuleTable[] empty = RuleStore.importText("");
+			System.arraycopy(empty, 0, rules, 0, RuleSet.PHASES);
+		}
+
+		int wins = 0;
+		int draws = 0;
+		long turns = 0;
+		long start = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (int first = 0; first < games; first += batch) {
+				// the games of this batch all read this copy, which nothing changes until the batch is over
+				RuleTable[] snapshot = new RuleTable[RuleSet.PHASES];
+				for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+					snapshot[phase] = rules[phase].copy();
+				}
+				List<Game> batchGames = new ArrayList<Game>();
+				for (int g = first; g < Math.min(games, first + batch); g++) {
+					batchGames.add(new Game(map, numberOfPlayers, g % numberOfPlayers, seed + g, turnLimit, snapshot));
+				}
+				List<Future<Game>> results = pool.invokeAll(batchGames);
+
+				// merge the results on this thread only
+				for (int i = 0; i < results.size(); i++) {
+					Game game = results.get(i).get();
+					turns += game.turns;
+					if (game.winner == game.learnerSeat) {
+						wins++;
+					} else if (game.winner == -1) {
+						draws++;
+					}
+					game.learner.adjustRanks(rules, game.winner == game.learnerSeat ? -1 : 1);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("map " + map.getName() + " (" + map.getNumberOfCountries() + " countries), "
+				+ numberOfPlayers + " players, " + games + " games on " + threads + " threads");
+		System.out.println("learner won " + wins + ", drew " + draws + ", lost " + (games - wins - draws)
+				+ " (win rate " + (games == 0 ? 0 : 100 * wins / games) + "%)");
+		System.out.println("average game length " + (games == 0 ? 0 : turns / games) + " turns, "
+				+ String.format("%.1f", games / seconds) + " games per second");
+
+		if (rulesPath != null) {
+			RuleStore.write(new File(RuleStore.binaryPath(rulesPath)), rules);
+			RuleSet.invalidate(rulesPath);
+			System.out.println("saved the learned rules to " + RuleStore.binaryPath(rulesPath));
+		}
+	}
+
+	// one independent game, which can be played on any thread
+	private static class Game implements Callable<Game> {
+		final SimMap map;
+		final int learnerSeat;
+		final long seed;
+		final int turnLimit;
+		final SimLearner learner;
+		final SimPlayer[] players;
+		int winner;
+		int turns;
+
+		Game(SimMap map, int numberOfPlayers, int learnerSeat, long seed, int turnLimit, RuleTable[] rules) {
+			this.map = map;
+			this.learnerSeat = learnerSeat;
+			this.seed = seed;
+			this.turnLimit = turnLimit;
+			learner = new SimLearner(rules, new Random(seed * 31 + 7), 0.15f);
+			players = new SimPlayer[numberOfPlayers];
+			for (int p = 0; p < numberOfPlayers; p++) {
+				players[p] = p == learnerSeat ? learner : new SimBasicPlayer();
+			}
+		}
+
+		public Game call() {
+			SimGame game = new SimGame(map, players, seed);
+			game.setTurnLimit(turnLimit);
+			winner = game.play();
+			turns = game.getTurnCount();
+			return this;
+		}
+	}
+}
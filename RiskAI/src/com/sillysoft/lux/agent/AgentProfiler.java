@@ -0,0 +1,156 @@
+package com.sillysoft.lux.agent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts, time and allocations of the agent's scoring methods and attack helpers, for one game.
+ *
+ * Profiling is off unless the JVM is started with -Driskai.profile=true. ENABLED is a static final, so when it is
+ * off the JIT removes the checks and the instrumented methods run as if they were not instrumented.
+ * An instrumented method reads the clock and the thread's allocation counter when it starts and reports both when it ends:
+ *   long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
+ *   ...
+ *   profiler.record(AgentProfiler.VULNERABILITY, started, allocated);
+ * Times and allocations include the methods called from inside, so nested methods are counted in both.
+ *
+ * The counters are LongAdders, so methods can record from several threads without locking.
+ * Allocations are read from the JVM's per-thread allocation counter, where the JVM has one.
+ */
+public class AgentProfiler {
+
+	public static final boolean ENABLED = Boolean.getBoolean("riskai.profile");
+
+	public static final int STRATEGIC_VALUE = 0;
+	public static final int VULNERABILITY = 1;
+	public static final int STABILITY = 2;
+	public static final int ADVANTAGE = 3;
+	public static final int THREAT = 4;
+	public static final int ATTACK_EASY_EXPAND = 5;
+	public static final int ATTACK_FILL_OUT = 6;
+	public static final int ATTACK_CONSOLIDATE = 7;
+	public static final int ATTACK_SPLIT_OFF = 8;
+	public static final int ATTACK_SPLIT_UP = 9;
+	public static final int TRIPLE_ATTACK_PACK = 10;
+	public static final int ATTACK_AS_MUCH_AS_POSSIBLE = 11;
+	public static final int ATTACK_FOR_CARD = 12;
+	public static final int ATTACK_TO_KILL_PLAYER = 13;
+	public static final int ATTACK_TO_KILL_CONTINENT = 14;
+	public static final int ATTACK_ALONG_PATH = 15;
+	public static final int FORTIFY_CLUSTER = 16;
+
+	private static final String[] NAMES = {
+		"calculateStrategicValue", "calculateVulnerability", "calculateStability", "calculateAdvantage", "calculateThreat",
+		"attackEasyExpand", "attackFillOut", "attackConsolidate", "attackSplitOff", "attackSplitUp",
+		"tripleAttackPack", "attackAsMuchAsPossible", "attackForCard", "attackToKillPlayer", "attackToKillContinent",
+		"attackAlongPath", "fortifyCluster"};
+
+	// null if profiling is off or the JVM cannot count allocations
+	private static final com.sun.management.ThreadMXBean allocationCounter = allocationCounter();
+
+	private final LongAdder[] calls;
+	private final LongAdder[] nanos;
+	private final LongAdder[] bytes;
+
+	public AgentProfiler() {
+		int count = ENABLED ? NAMES.length : 0;
+		calls = new LongAdder[count];
+		nanos = new LongAdder[count];
+		bytes = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			calls[i] = new LongAdder();
+			nanos[i] = new LongAdder();
+			bytes[i] = new LongAdder();
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		if (!ENABLED) {
+			return null;
+		}
+		try {
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (threads instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+				return (com.sun.management.ThreadMXBean) threads;
+			}
+		} catch (LinkageError e) {
+			// not a HotSpot JVM
+		}
+		return null;
+	}
+
+	/** The start time to pass to record(), or 0 when profiling is off. */
+	public static long time() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/** The bytes this thread has allocated so far, to pass to record(), or 0 when profiling is off. */
+	public static long allocated() {
+		if (!ENABLED || allocationCounter == null) {
+			return 0;
+		}
+		return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/** Count one call of <method> that started at <startTime> with <startAllocated> bytes allocated. */
+	public void record(int method, long startTime, long startAllocated) {
+		if (!ENABLED) {
+			return;
+		}
+		nanos[method].add(System.nanoTime() - startTime);
+		calls[method].increment();
+		if (allocationCounter != null) {
+			bytes[method].add(allocated() - startAllocated);
+		}
+	}
+
+	/** Zero every counter, for the next game. */
+	public void reset() {
+		for (int i = 0; i < calls.length; i++) {
+			calls[i].reset();
+			nanos[i].reset();
+			bytes[i].reset();
+		}
+	}
+
+	/** A table of every method that was called, the most expensive first. Empty when profiling is off. */
+	public String summary() {
+		if (!ENABLED) {
+			return "";
+		}
+		// order by total time, with a selection sort as there are only a few methods
+		int[] order = new int[NAMES.length];
+		long[] total = new long[NAMES.length];
+		for (int i = 0; i < NAMES.length; i++) {
+			order[i] = i;
+			total[i] = nanos[i].sum();
+		}
+		for (int i = 0; i < order.length; i++) {
+			int best = i;
+			for (int j = i + 1; j < order.length; j++) {
+				if (total[order[j]] > total[order[best]]) {
+					best = j;
+				}
+			}
+			int swap = order[i];
+			order[i] = order[best];
+			order[best] = swap;
+		}
+
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%-28s %10s %12s %12s %14s%n", "method", "calls", "total ms", "us/call", "bytes/call"));
+		for (int i = 0; i < order.length; i++) {
+			int method = order[i];
+			long count = calls[method].sum();
+			if (count == 0) {
+				continue;
+			}
+			String bytesPerCall = allocationCounter == null ? "-" : String.format("%.1f", bytes[method].sum() / (double) count);
+			result.append(String.format("%-28s %10d %12.3f %12.3f %14s%n", NAMES[method], count,
+					total[method] / 1e6, total[method] / 1e3 / count, bytesPerCall));
+		}
+		return result.toString();
+	}
+}
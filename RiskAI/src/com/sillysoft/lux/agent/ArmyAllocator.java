@@ -0,0 +1,105 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * Distributes a number of armies between candidate countries in one pass.
+ *
+ * Every candidate is scored once as value = weight / vulnerability, and the candidates are kept in a max-heap.
+ * Each army placed on a country lowers its vulnerability by a fixed step, so after a placement only
+ * that country's value is recomputed and sifted back into the heap. Ties go to the lowest country code,
+ * which matches scanning the countries in order and keeping the first strictly better one.
+ *
+ * The result is a count of armies per candidate, so the caller can place them with one board call per country.
+ */
+public class ArmyAllocator {
+
+	private final int[] codes;
+	private final float[] weight;
+	private final float[] vulnerability;
+	private final float[] value;
+	private final int[] placed;
+	private int candidates;
+
+	// heap of candidate indexes, ordered by value
+	private final int[] heap;
+
+	public ArmyAllocator(int capacity) {
+		codes = new int[capacity];
+		weight = new float[capacity];
+		vulnerability = new float[capacity];
+		value = new float[capacity];
+		placed = new int[capacity];
+		heap = new int[capacity];
+	}
+
+	/** Add a country that may receive armies. */
+	public void addCandidate(int code, float candidateWeight, float candidateVulnerability) {
+		int i = candidates++;
+		codes[i] = code;
+		weight[i] = candidateWeight;
+		vulnerability[i] = candidateVulnerability;
+		value[i] = candidateWeight / candidateVulnerability;
+		placed[i] = 0;
+	}
+
+	public int getNumberOfCandidates() {
+		return candidates;
+	}
+
+	public int getCode(int candidate) {
+		return codes[candidate];
+	}
+
+	/** How many armies allocate() gave to the candidate. */
+	public int getPlaced(int candidate) {
+		return placed[candidate];
+	}
+
+	/**
+	 * Hand out <numberOfArmies> one at a time, always to the candidate with the highest current value.
+	 * @param vulnerabilityPerArmy How much one army lowers the vulnerability of the country it is placed on
+	 */
+	public void allocate(int numberOfArmies, float vulnerabilityPerArmy) {
+		if (candidates == 0) {
+			return;
+		}
+		for (int i = 0; i < candidates; i++) {
+			heap[i] = i;
+		}
+		for (int i = candidates / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+
+		for (int n = 0; n < numberOfArmies; n++) {
+			int best = heap[0];
+			placed[best]++;
+			value[best] = weight[best] / (vulnerability[best] - placed[best] * vulnerabilityPerArmy);
+			siftDown(0);
+		}
+	}
+
+	private boolean better(int a, int b) {
+		if (value[a] != value[b]) {
+			return value[a] > value[b];
+		}
+		return codes[a] < codes[b];
+	}
+
+	private void siftDown(int position) {
+		int item = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= candidates) {
+				break;
+			}
+			if (child + 1 < candidates && better(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!better(heap[child], item)) {
+				break;
+			}
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = item;
+	}
+}
@@ -0,0 +1,191 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * A priority queue of possible attacks, each a pair of (attacking country, neighboring target country) with a score.
+ *
+ * Every border of the board is one pair, identified by a pair number: the pairs of attacker <a> are numbered
+ * getPairsFromStart(a) up to getPairsFromEnd(a), in the order of a's adjoining list. The pairs that attack a country
+ * can be listed too, so after a battle the caller can rescore just the pairs that involve the countries that changed.
+ *
+ * The queue is a binary min-heap indexed by pair number, so adding, rescoring or removing a pair is O(log n) and
+ * the best (lowest scoring) pair is found in O(1). Equal scores go to the lowest pair number, which matches
+ * scanning attackers in code order and keeping the first strictly better target. The best pair is only the one a
+ * full scan would pick if the scores are up to date: the queue does not know when a score it holds has gone stale.
+ */
+public class AttackCandidates {
+
+	private final int[] fromOffset;
+	private final int[] attacker;
+	private final int[] target;
+	private final int[] intoOffset;
+	private final int[] intoPairs;
+
+	private final float[] score;
+	private final int[] heap;
+	// where each pair is in the heap, or -1 if it is not queued
+	private final int[] position;
+	private int size;
+
+	/**
+	 * @param adjoining For each country code, the codes of the countries it can attack
+	 */
+	public AttackCandidates(int[][] adjoining) {
+		int countries = adjoining.length;
+		fromOffset = new int[countries + 1];
+		for (int a = 0; a < countries; a++) {
+			fromOffset[a + 1] = fromOffset[a] + adjoining[a].length;
+		}
+		int pairs = fromOffset[countries];
+		attacker = new int[pairs];
+		target = new int[pairs];
+		intoOffset = new int[countries + 1];
+		for (int a = 0; a < countries; a++) {
+			for (int i = 0; i < adjoining[a].length; i++) {
+				attacker[fromOffset[a] + i] = a;
+				target[fromOffset[a] + i] = adjoining[a][i];
+				intoOffset[adjoining[a][i] + 1]++;
+			}
+		}
+		for (int t = 0; t < countries; t++) {
+			intoOffset[t + 1] += intoOffset[t];
+		}
+		intoPairs = new int[pairs];
+		int[] fill = new int[countries];
+		for (int pair = 0; pair < pairs; pair++) {
+			int t = target[pair];
+			intoPairs[intoOffset[t] + fill[t]++] = pair;
+		}
+
+		score = new float[pairs];
+		heap = new int[pairs];
+		position = new int[pairs];
+		for (int pair = 0; pair < pairs; pair++) {
+			position[pair] = -1;
+		}
+	}
+
+	public int getAttacker(int pair) {
+		return attacker[pair];
+	}
+
+	public int getTarget(int pair) {
+		return target[pair];
+	}
+
+	/** The first pair number with <code> as the attacker. */
+	public int getPairsFromStart(int code) {
+		return fromOffset[code];
+	}
+
+	/** One past the last pair number with <code> as the attacker. */
+	public int getPairsFromEnd(int code) {
+		return fromOffset[code + 1];
+	}
+
+	/** The number of pairs with <code> as the target. */
+	public int getNumberOfPairsInto(int code) {
+		return intoOffset[code + 1] - intoOffset[code];
+	}
+
+	/** The <i>th pair with <code> as the target. */
+	public int getPairInto(int code, int i) {
+		return intoPairs[intoOffset[code] + i];
+	}
+
+	/** Remove every pair from the queue. */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** The queued pair with the lowest score. The queue must not be empty. */
+	public int peek() {
+		return heap[0];
+	}
+
+	/** Queue <pair> with <pairScore>, or change its score if it is already queued. The score must not be NaN. */
+	public void set(int pair, float pairScore) {
+		int i = position[pair];
+		if (i == -1) {
+			i = size++;
+			heap[i] = pair;
+			position[pair] = i;
+			score[pair] = pairScore;
+			siftUp(i);
+		} else {
+			float old = score[pair];
+			score[pair] = pairScore;
+			if (pairScore < old) {
+				siftUp(i);
+			} else {
+				siftDown(i);
+			}
+		}
+	}
+
+	/** Take <pair> out of the queue, if it is queued. */
+	public void remove(int pair) {
+		int i = position[pair];
+		if (i == -1) {
+			return;
+		}
+		position[pair] = -1;
+		size--;
+		if (i < size) {
+			int moved = heap[size];
+			heap[i] = moved;
+			position[moved] = i;
+			siftUp(i);
+			if (position[moved] == i) {
+				siftDown(i);
+			}
+		}
+	}
+
+	// does pair a come before pair b?
+	private boolean before(int a, int b) {
+		return score[a] < score[b] || (score[a] == score[b] && a < b);
+	}
+
+	private void siftUp(int i) {
+		int pair = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (!before(pair, heap[parent])) {
+				break;
+			}
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = pair;
+		position[pair] = i;
+	}
+
+	private void siftDown(int i) {
+		int pair = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], pair)) {
+				break;
+			}
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = pair;
+		position[pair] = i;
+	}
+}
@@ -0,0 +1,304 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * The odds of a battle fought to the end: the attacker keeps rolling until the defender is wiped out
+ * or only one army is left in the attacking country.
+ *
+ * Armies are counted as they stand on the board, so an attacking country with A armies rolls min(3, A-1) dice
+ * and a defending country with D armies rolls min(2, D). Every (A, D) up to the cap is worked out exactly
+ * once, by dynamic programming over the outcomes of a single roll, and kept in one flat float[].
+ * Looking up a battle is then O(1).
+ *
+ * A bigger battle extends the exact table, doubling the cap until it covers the battle, up to the maximum cap.
+ * The bigger table replaces the old one as a whole, so lookups on other threads see one or the other.
+ * Past the maximum cap the battle is approximated: the armies the attacker loses killing D defenders are taken to be
+ * normal, and the attacker wins if they are fewer than the A - 1 it can spend. The win chance is the normal
+ * distribution at that point, and the armies left on each side are partial expectations of the same normal.
+ * Compared with the exact odds of battles of 1000 to 2000 armies, the win chance is within 0.005 and the armies
+ * left within 0.2 of the exact values, close battles included. The win chance is the weaker of the two: its error
+ * shrinks with the size of the battle, and at 100 armies it would be 0.017.
+ */
+public class BattleOdds {
+
+	/** The largest stack of the table used by getDefault(), when it is first built. */
+	public static final int DEFAULT_CAP = 100;
+	/** The largest stack that the table of getDefault() is extended to. It then takes 12 MB. */
+	public static final int DEFAULT_MAX_CAP = 1000;
+
+	// per (A, D): the chance the attacker wins, and the armies the attacking and defending countries are expected to have left
+	private static final int WIN = 0;
+	private static final int SURVIVORS = 1;
+	private static final int DEFENDERS = 2;
+	private static final int FIELDS = 3;
+
+	// for long battles of 3 dice against 2: the mean and the variance of the armies the attacker loses per defending army killed
+	private static final double LOSS_PER_KILL;
+	private static final double LOSS_VARIANCE_PER_KILL;
+	// The end of a battle is fought with fewer dice: the defender's last army rolls one, and the attacker's last armies
+	// roll fewer than three. These are the armies that this leaves to the winner on top of the long-battle means,
+	// which stop depending on the size of the battle after about 30 armies
+	private static final double ATTACKER_END;
+	private static final double DEFENDER_END;
+
+	static {
+		// each roll costs the two sides X and 2 - X armies. Over many rolls the attacker's losses grow by
+		// X - LOSS_PER_KILL * (2 - X) per roll above the mean, and there are about 1 / (2 - E[X]) rolls per kill
+		double[] losses = rollOutcomes()[3][2];
+		double mean = losses[1] + 2 * losses[2];
+		double variance = losses[1] + 4 * losses[2] - mean * mean;
+		LOSS_PER_KILL = mean / (2 - mean);
+		LOSS_VARIANCE_PER_KILL = (1 + LOSS_PER_KILL) * (1 + LOSS_PER_KILL) * variance / (2 - mean);
+
+		// read off battles that are certain wins and losses
+		Table small = new Table(130);
+		ATTACKER_END = small.table[small.index(130, 40) + SURVIVORS] - (130 - 40 * LOSS_PER_KILL);
+		DEFENDER_END = small.table[small.index(40, 120) + DEFENDERS] - (120 - 39 / LOSS_PER_KILL);
+	}
+
+	private static BattleOdds defaultOdds;
+
+	private final int maxCap;
+	private volatile Table exact;
+
+	/**
+	 * @param cap The largest number of armies in either country that is worked out exactly
+	 */
+	public BattleOdds(int cap) {
+		this(cap, cap);
+	}
+
+	/**
+	 * @param cap The largest number of armies in either country that is worked out exactly at first
+	 * @param maxCap The largest that the exact table is extended to when bigger battles are looked up
+	 */
+	public BattleOdds(int cap, int maxCap) {
+		if (cap < 1 || maxCap < cap) {
+			throw new IllegalArgumentException("need 1 <= cap <= maxCap: " + cap + ", " + maxCap);
+		}
+		this.maxCap = maxCap;
+		exact = new Table(cap);
+	}
+
+	// the exact odds of every battle up to a cap
+	private static final class Table {
+		final int cap;
+		final float[] table;
+
+		Table(int cap) {
+			this.cap = cap;
+			table = new float[(cap + 1) * (cap + 1) * FIELDS];
+
+			double[][][] roll = rollOutcomes();
+			// a battle only moves to smaller stacks, so filling A and D upwards always finds the states it moves to
+			for (int a = 1; a <= cap; a++) {
+				for (int d = 0; d <= cap; d++) {
+					int i = index(a, d);
+					if (d == 0) {
+						table[i + WIN] = 1;
+						table[i + SURVIVORS] = a;
+						table[i + DEFENDERS] = 0;
+					} else if (a == 1) {
+						table[i + WIN] = 0;
+						table[i + SURVIVORS] = 1;
+						table[i + DEFENDERS] = d;
+					} else {
+						int attackDice = Math.min(3, a - 1);
+						int defendDice = Math.min(2, d);
+						int lost = Math.min(attackDice, defendDice);
+						double win = 0;
+						double survivors = 0;
+						double defenders = 0;
+						for (int attackerLost = 0; attackerLost <= lost; attackerLost++) {
+							double p = roll[attackDice][defendDice][attackerLost];
+							int next = index(a - attackerLost, d - (lost - attackerLost));
+							win += p * table[next + WIN];
+							survivors += p * table[next + SURVIVORS];
+							defenders += p * table[next + DEFENDERS];
+						}
+						table[i + WIN] = (float) win;
+						table[i + SURVIVORS] = (float) survivors;
+						table[i + DEFENDERS] = (float) defenders;
+					}
+				}
+			}
+		}
+
+		int index(int attackerArmies, int defenderArmies) {
+			return (attackerArmies * (cap + 1) + defenderArmies) * FIELDS;
+		}
+	}
+
+	/** A shared table with DEFAULT_CAP and DEFAULT_MAX_CAP, built on first use. */
+	public static synchronized BattleOdds getDefault() {
+		if (defaultOdds == null) {
+			defaultOdds = new BattleOdds(DEFAULT_CAP, DEFAULT_MAX_CAP);
+		}
+		return defaultOdds;
+	}
+
+	/** The largest number of armies in either country that is worked out exactly so far. */
+	public int getCap() {
+		return exact.cap;
+	}
+
+	public int getMaxCap() {
+		return maxCap;
+	}
+
+	/**
+	 * The chance that a country with <attackerArmies> takes a country with <defenderArmies>, attacking till dead.
+	 */
+	public float getWinProbability(int attackerArmies, int defenderArmies) {
+		if (defenderArmies <= 0) {
+			return 1;
+		}
+		if (attackerArmies <= 1) {
+			return 0;
+		}
+		Table t = tableFor(attackerArmies, defenderArmies);
+		if (t != null) {
+			return t.table[t.index(attackerArmies, defenderArmies) + WIN];
+		}
+		return (float) normal(winPoint(attackerArmies, defenderArmies));
+	}
+
+	/**
+	 * The number of armies the attacking country is expected to have when the battle is over,
+	 * counting the one that always stays behind. Averaged over wins and losses.
+	 */
+	public float getExpectedSurvivors(int attackerArmies, int defenderArmies) {
+		if (defenderArmies <= 0 || attackerArmies <= 1) {
+			return Math.max(attackerArmies, 1);
+		}
+		Table t = tableFor(attackerArmies, defenderArmies);
+		if (t != null) {
+			return t.table[t.index(attackerArmies, defenderArmies) + SURVIVORS];
+		}
+		// With a loss L, the attacker keeps A - L when it wins (z is where L stops being small enough) and 1 when it loses.
+		// E[A - L; win] is a partial expectation of the normal
+		double mean = defenderArmies * LOSS_PER_KILL;
+		double deviation = Math.sqrt(defenderArmies * LOSS_VARIANCE_PER_KILL);
+		double z = winPoint(attackerArmies, defenderArmies);
+		double win = normal(z);
+		return (float) ((1 - win) + (attackerArmies - mean + ATTACKER_END) * win + deviation * density(z));
+	}
+
+	/**
+	 * The number of armies the defending country is expected to have when the battle is over.
+	 * Averaged over wins (when it has none) and losses.
+	 */
+	public float getExpectedDefenderSurvivors(int attackerArmies, int defenderArmies) {
+		if (defenderArmies <= 0 || attackerArmies <= 1) {
+			return Math.max(defenderArmies, 0);
+		}
+		Table t = tableFor(attackerArmies, defenderArmies);
+		if (t != null) {
+			return t.table[t.index(attackerArmies, defenderArmies) + DEFENDERS];
+		}
+		// Spending all A - 1 armies kills a normal number K of defenders (the renewal count of the losses per kill),
+		// and the defender keeps D - K when K < D. Its mean is then a partial expectation of the normal
+		double spent = attackerArmies - 1;
+		double mean = spent / LOSS_PER_KILL - DEFENDER_END;
+		double deviation = Math.sqrt(spent * LOSS_VARIANCE_PER_KILL / (LOSS_PER_KILL * LOSS_PER_KILL * LOSS_PER_KILL));
+		double z = (defenderArmies - mean) / deviation;
+		double left = (defenderArmies - mean) * normal(z) + deviation * density(z);
+		return (float) Math.max(left, 1 - getWinProbability(attackerArmies, defenderArmies));
+	}
+
+	// The exact table if it covers the battle, after extending it if need be. Null past maxCap
+	private Table tableFor(int attackerArmies, int defenderArmies) {
+		Table t = exact;
+		int size = Math.max(attackerArmies, defenderArmies);
+		if (size <= t.cap) {
+			return t;
+		}
+		if (size > maxCap) {
+			return null;
+		}
+		return extend(size);
+	}
+
+	private synchronized Table extend(int size) {
+		Table t = exact;
+		if (size > t.cap) {
+			int cap = t.cap;
+			while (cap < size) {
+				cap *= 2;
+			}
+			t = new Table(Math.min(maxCap, cap));
+			exact = t;
+		}
+		return t;
+	}
+
+	// The attacker wins if the armies it loses killing <defenderArmies> are fewer than the <attackerArmies> - 1 it can spend.
+	// That loss is a sum over many rolls, so it is taken to be normal; this is the winning point in standard units
+	private static double winPoint(int attackerArmies, int defenderArmies) {
+		double mean = defenderArmies * LOSS_PER_KILL;
+		double deviation = Math.sqrt(defenderArmies * LOSS_VARIANCE_PER_KILL);
+		return (attackerArmies - 1 - 0.5 - mean) / deviation;
+	}
+
+	// the standard normal density
+	private static double density(double x) {
+		return 0.3989422804014327 * Math.exp(-x * x / 2);
+	}
+
+	// the standard normal distribution function (Abramowitz and Stegun 26.2.17, error below 1e-7)
+	private static double normal(double x) {
+		double t = 1 / (1 + 0.2316419 * Math.abs(x));
+		double tail = density(x)
+				* t * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+		return x >= 0 ? 1 - tail : tail;
+	}
+
+	// [attack dice][defend dice][armies the attacker loses]: the chances of one roll, from every combination of dice
+	private static double[][][] rollOutcomes() {
+		double[][][] outcomes = new double[4][3][3];
+		int[] attack = new int[3];
+		int[] defend = new int[2];
+		for (int attackDice = 1; attackDice <= 3; attackDice++) {
+			for (int defendDice = 1; defendDice <= 2; defendDice++) {
+				int dice = attackDice + defendDice;
+				int combinations = 1;
+				for (int i = 0; i < dice; i++) {
+					combinations *= 6;
+				}
+				for (int c = 0; c < combinations; c++) {
+					int rest = c;
+					for (int i = 0; i < attackDice; i++) {
+						attack[i] = rest % 6;
+						rest /= 6;
+					}
+					for (int i = 0; i < defendDice; i++) {
+						defend[i] = rest % 6;
+						rest /= 6;
+					}
+					sortDescending(attack, attackDice);
+					sortDescending(defend, defendDice);
+					int attackerLost = 0;
+					for (int i = 0; i < Math.min(attackDice, defendDice); i++) {
+						// the defender wins ties
+						if (attack[i] <= defend[i]) {
+							attackerLost++;
+						}
+					}
+					outcomes[attackDice][defendDice][attackerLost] += 1.0 / combinations;
+				}
+			}
+		}
+		return outcomes;
+	}
+
+	private static void sortDescending(int[] dice, int count) {
+		for (int i = 1; i < count; i++) {
+			int die = dice[i];
+			int j = i - 1;
+			while (j >= 0 && dice[j] < die) {
+				dice[j + 1] = dice[j];
+				j--;
+			}
+			dice[j + 1] = die;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.sillysoft.lux.agent;
+
+import com.sillysoft.lux.*;
+
+import java.util.Arrays;
+
+/**
+ * All-pairs hop distances for a board.
+ * The matrix is built once (normally in setPrefs) with one breadth first search per country,
+ * and stored row-major in a flat array so that a lookup is a single array read.
+ *
+ * The map topology never changes during a game, so the matrix never needs to be rebuilt.
+ */
+public class BoardDistances {
+
+	/** Stored for pairs of countries that have no route between them. */
+	public static final short UNREACHABLE = Short.MAX_VALUE;
+
+	private final int size;
+	private final short[] hops;
+	// built on first use, see inverseRouteLengths()
+	private float[] inverseRouteLengths;
+
+	public BoardDistances(Country[] countries) {
+		this(adjoiningCodes(countries));
+	}
+
+	/**
+	 * Build the matrix from adjacency lists.
+	 * @param adjoining For each country code, the codes of the countries it can go to
+	 */
+	public BoardDistances(int[][] adjoining) {
+		size = adjoining.length;
+		hops = new short[size * size];
+		Arrays.fill(hops, UNREACHABLE);
+
+		int[] queue = new int[size];
+		for (int source = 0; source < size; source++) {
+			int row = source * size;
+			int head = 0, tail = 0;
+			hops[row + source] = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				int current = queue[head++];
+				short next = (short) (hops[row + current] + 1);
+				int[] neighbors = adjoining[current];
+				for (int n = 0; n < neighbors.length; n++) {
+					if (hops[row + neighbors[n]] == UNREACHABLE) {
+						hops[row + neighbors[n]] = next;
+						queue[tail++] = neighbors[n];
+					}
+				}
+			}
+		}
+	}
+
+	// the adjacency lists are only read once per country, not once per search
+	static int[][] adjoiningCodes(Country[] countries) {
+		int[][] result = new int[countries.length][];
+		for (int i = 0; i < countries.length; i++) {
+			result[i] = countries[i].getAdjoiningCodeList();
+		}
+		return result;
+	}
+
+	// the reverse of <adjoining>: for each country code, the codes of the countries that can go to it
+	static int[][] incomingCodes(int[][] adjoining) {
+		int size = adjoining.length;
+		int[] count = new int[size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < adjoining[i].length; j++) {
+				count[adjoining[i][j]]++;
+			}
+		}
+		int[][] result = new int[size][];
+		for (int i = 0; i < size; i++) {
+			result[i] = new int[count[i]];
+			count[i] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < adjoining[i].length; j++) {
+				int to = adjoining[i][j];
+				result[to][count[to]++] = i;
+			}
+		}
+		return result;
+	}
+
+	/** The number of countries this matrix was built for. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The fewest number of borders that must be crossed to go from one country to another.
+	 * @return The hop count, or UNREACHABLE if there is no route
+	 */
+	public int hops(int from, int to) {
+		return hops[from * size + to];
+	}
+
+	/**
+	 * The number of countries on the shortest route between two countries, including both ends,
+	 * so a country's distance to itself is 1. Routes are counted in borders crossed, not in the enemy armies on the way,
+	 * so this can be shorter than a cheapest route from BoardHelper.easyCostBetweenCountries().
+	 * @return The route length, or UNREACHABLE if there is no route
+	 */
+	public int routeLength(int from, int to) {
+		int result = hops[from * size + to];
+		if (result == UNREACHABLE) {
+			return UNREACHABLE;
+		}
+		return result + 1;
+	}
+
+	/**
+	 * The matrix of 1 / routeLength(from, to), row-major at [from * size() + to], with 0 for pairs that have no route.
+	 * Distance-weighted sums over the whole board are then a multiply-add over one row.
+	 * The array is built on the first call and shared, so it must not be changed.
+	 */
+	public float[] inverseRouteLengths() {
+		if (inverseRouteLengths == null) {
+			float[] result = new float[size * size];
+			for (int i = 0; i < result.length; i++) {
+				if (hops[i] != UNREACHABLE) {
+					result[i] = 1f / (hops[i] + 1);
+				}
+			}
+			inverseRouteLengths = result;
+		}
+		return inverseRouteLengths;
+	}
+}
@@ -0,0 +1,212 @@
+package com.sillysoft.lux.agent;
+
+import com.sillysoft.lux.*;
+
+import java.util.Arrays;
+
+/**
+ * A copy of the board in primitive arrays, for evaluating what-if boards without touching the game.
+ *
+ * The snapshot holds the owner and army count of every country, as they were at the last refresh(). The map
+ * itself is stored once and shared by every copy: the borders in compressed rows (the neighbors of country <c>
+ * are the edges from getAdjoiningStart(c) up to getAdjoiningEnd(c)), and the countries of each continent the same way.
+ * Copying a snapshot, with the copy constructor or copyFrom(), only copies the owners and armies.
+ *
+ * Placements, battles, conquests and fortifications can be applied to a snapshot. Each one logs the countries it
+ * changes, so a lookahead can take a mark(), try a line of play and undo() back to the mark. The snapshot does not
+ * check the rules or roll dice: the caller decides what is legal and what a battle costs, as SimGame would.
+ */
+public class BoardSnapshot {
+
+	private final Country[] countries;
+	private final int size;
+	private final int numberOfContinents;
+
+	// shared between copies, as the map never changes
+	private final int[] adjoiningOffsets;
+	private final int[] adjoiningEdges;
+	private final int[] continent;
+	private final int[] continentOffsets;
+	private final int[] continentMembers;
+
+	private final int[] owner;
+	private final int[] armies;
+
+	// (code, owner, armies) of each country before each change, oldest first
+	private int[] undoLog = new int[48];
+	private int undoSize;
+
+	/** Make a snapshot of <countries> as they are now. */
+	public BoardSnapshot(Country[] countries, int numberOfContinents) {
+		this.countries = countries;
+		this.numberOfContinents = numberOfContinents;
+		size = countries.length;
+
+		int[][] adjoining = BoardDistances.adjoiningCodes(countries);
+		adjoiningOffsets = new int[size + 1];
+		for (int i = 0; i < size; i++) {
+			adjoiningOffsets[i + 1] = adjoiningOffsets[i] + adjoining[i].length;
+		}
+		adjoiningEdges = new int[adjoiningOffsets[size]];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(adjoining[i], 0, adjoiningEdges, adjoiningOffsets[i], adjoining[i].length);
+		}
+
+		continent = new int[size];
+		for (int i = 0; i < size; i++) {
+			continent[i] = countries[i].getContinent();
+		}
+		continentOffsets = new int[numberOfContinents + 1];
+		for (int i = 0; i < size; i++) {
+			continentOffsets[continent[i] + 1]++;
+		}
+		for (int cont = 0; cont < numberOfContinents; cont++) {
+			continentOffsets[cont + 1] += continentOffsets[cont];
+		}
+		continentMembers = new int[size];
+		int[] next = Arrays.copyOf(continentOffsets, numberOfContinents);
+		for (int i = 0; i < size; i++) {
+			continentMembers[next[continent[i]]++] = i;
+		}
+
+		owner = new int[size];
+		armies = new int[size];
+		refresh();
+	}
+
+	/** Make a copy of <other>, with an empty undo log. */
+	public BoardSnapshot(BoardSnapshot other) {
+		countries = other.countries;
+		size = other.size;
+		numberOfContinents = other.numberOfContinents;
+		adjoiningOffsets = other.adjoiningOffsets;
+		adjoiningEdges = other.adjoiningEdges;
+		continent = other.continent;
+		continentOffsets = other.continentOffsets;
+		continentMembers = other.continentMembers;
+		owner = other.owner.clone();
+		armies = other.armies.clone();
+	}
+
+	/** Re-read the owners and armies from the board, and clear the undo log. Call it at the start of each phase. */
+	public void refresh() {
+		for (int i = 0; i < size; i++) {
+			owner[i] = countries[i].getOwner();
+			armies[i] = countries[i].getArmies();
+		}
+		undoSize = 0;
+	}
+
+	/** Copy the owners and armies of <other>, a snapshot of the same board, and clear the undo log. */
+	public void copyFrom(BoardSnapshot other) {
+		System.arraycopy(other.owner, 0, owner, 0, size);
+		System.arraycopy(other.armies, 0, armies, 0, size);
+		undoSize = 0;
+	}
+
+	public int getNumberOfCountries() {
+		return size;
+	}
+
+	public int getNumberOfContinents() {
+		return numberOfContinents;
+	}
+
+	public int getOwner(int code) {
+		return owner[code];
+	}
+
+	public int getArmies(int code) {
+		return armies[code];
+	}
+
+	public int getContinent(int code) {
+		return continent[code];
+	}
+
+	/** The first edge of <code>'s borders. */
+	public int getAdjoiningStart(int code) {
+		return adjoiningOffsets[code];
+	}
+
+	/** One past the last edge of <code>'s borders. */
+	public int getAdjoiningEnd(int code) {
+		return adjoiningOffsets[code + 1];
+	}
+
+	/** The country an edge goes to. */
+	public int getEdge(int edge) {
+		return adjoiningEdges[edge];
+	}
+
+	/** The first index of continent <cont>'s countries. */
+	public int getContinentStart(int cont) {
+		return continentOffsets[cont];
+	}
+
+	/** One past the last index of continent <cont>'s countries. */
+	public int getContinentEnd(int cont) {
+		return continentOffsets[cont + 1];
+	}
+
+	/** The country at <index> of the continent lists. */
+	public int getContinentMember(int index) {
+		return continentMembers[index];
+	}
+
+	/** Place <numberOfArmies> on <code>. */
+	public void placeArmies(int numberOfArmies, int code) {
+		log(code);
+		armies[code] += numberOfArmies;
+	}
+
+	/** Remove the armies each side lost in a battle between <attacker> and <defender>. */
+	public void battle(int attacker, int defender, int attackerLosses, int defenderLosses) {
+		log(attacker);
+		log(defender);
+		armies[attacker] -= attackerLosses;
+		armies[defender] -= defenderLosses;
+	}
+
+	/** Give <defender> to the owner of <attacker>, and move <armiesMoved> armies into it. */
+	public void conquer(int attacker, int defender, int armiesMoved) {
+		log(attacker);
+		log(defender);
+		owner[defender] = owner[attacker];
+		armies[attacker] -= armiesMoved;
+		armies[defender] = armiesMoved;
+	}
+
+	/** Move <numberOfArmies> from <from> to <to>. */
+	public void fortify(int numberOfArmies, int from, int to) {
+		log(from);
+		log(to);
+		armies[from] -= numberOfArmies;
+		armies[to] += numberOfArmies;
+	}
+
+	/** A point in the undo log to return to with undo(). */
+	public int mark() {
+		return undoSize;
+	}
+
+	/** Undo every change made since <mark>, newest first. */
+	public void undo(int mark) {
+		while (undoSize > mark) {
+			undoSize -= 3;
+			int code = undoLog[undoSize];
+			owner[code] = undoLog[undoSize + 1];
+			armies[code] = undoLog[undoSize + 2];
+		}
+	}
+
+	private void log(int code) {
+		if (undoSize + 3 > undoLog.length) {
+			undoLog = Arrays.copyOf(undoLog, undoLog.length * 2);
+		}
+		undoLog[undoSize] = code;
+		undoLog[undoSize + 1] = owner[code];
+		undoLog[undoSize + 2] = armies[code];
+		undoSize += 3;
+	}
+}
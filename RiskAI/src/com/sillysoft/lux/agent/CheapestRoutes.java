@@ -0,0 +1,208 @@
+package com.sillysoft.lux.agent;
+
+import com.sillysoft.lux.*;
+
+/**
+ * Cheapest attack routes for a whole board, found with one search.
+ *
+ * The cost of a route is the number of enemy armies on it, as in SmartAgentBase.pathCost(). A multi-source
+ * Dijkstra search gives every country its cheapest cost, the next country toward the start of the search,
+ * and the country the search started from. It can run either way:
+ *   - compute(owner) starts from every country of <owner> and follows borders forward, giving the cheapest
+ *     route from any of our countries to every country;
+ *   - computeToContinent(owner, cont) starts from every country of <cont> and follows borders backward,
+ *     so one-way borders are respected, giving the cheapest route from every country into the continent.
+ * Either way a route only passes through enemy countries, except where it starts.
+ *
+ * The arrays and the heap are sized for the board once, so a search allocates nothing. Equal costs are settled
+ * in country code order, so the routes are the same every time for the same board.
+ */
+public class CheapestRoutes {
+
+	/** The cost of countries no route reaches. */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final Country[] countries;
+	private final int[][] adjoining;
+	private final int[][] incoming;
+	private final int size;
+
+	private final int[] cost;
+	// the neighbor one step closer to where the search started, or -1
+	private final int[] link;
+	private final int[] seed;
+	private final boolean[] settled;
+	private boolean reverse;
+
+	// a binary min-heap of (cost << 32 | code). A country can be queued again when a cheaper route is found,
+	// and the stale entries are skipped when they come out, so the heap can hold one entry per border plus the seeds
+	private final long[] heap;
+	private int heapSize;
+
+	public CheapestRoutes(Country[] countries) {
+		this.countries = countries;
+		adjoining = BoardDistances.adjoiningCodes(countries);
+		incoming = BoardDistances.incomingCodes(adjoining);
+		size = countries.length;
+		cost = new int[size];
+		link = new int[size];
+		seed = new int[size];
+		settled = new boolean[size];
+		int borders = 0;
+		for (int i = 0; i < size; i++) {
+			borders += adjoining[i].length;
+		}
+		heap = new long[borders + size];
+	}
+
+	/**
+	 * Find the cheapest routes from the countries of <owner> to every country, as the board is now.
+	 * Entering a country not owned by <owner> costs its armies.
+	 */
+	public void compute(int owner) {
+		reverse = false;
+		clear();
+		for (int i = 0; i < size; i++) {
+			if (countries[i].getOwner() == owner) {
+				start(i, 0);
+			}
+		}
+		search(owner, adjoining);
+	}
+
+	/**
+	 * Find the cheapest routes from every country into continent <cont>, for attacks by <owner>, as the board is now.
+	 * The search does not go on past countries of <owner>: routes can start there, but not cross them.
+	 */
+	public void computeToContinent(int owner, int cont) {
+		reverse = true;
+		clear();
+		for (int i = 0; i < size; i++) {
+			if (countries[i].getContinent() == cont) {
+				start(i, countries[i].getOwner() == owner ? 0 : countries[i].getArmies());
+			}
+		}
+		search(owner, incoming);
+	}
+
+	/**
+	 * The cost of the cheapest route to (after compute) or from (after computeToContinent) <code>,
+	 * counted like pathCost(): the armies of the countries on the route that the owner does not own.
+	 * @return The cost, or UNREACHABLE if there is no route
+	 */
+	public int getCost(int code) {
+		return cost[code];
+	}
+
+	/**
+	 * Where the search that reached <code> started: after compute(), the owned country the cheapest route starts from;
+	 * after computeToContinent(), the continent country it ends at. -1 if no route reaches <code>.
+	 */
+	public int getSource(int code) {
+		return seed[code];
+	}
+
+	/**
+	 * The cheapest route as a list of country codes, in the same form as the routes of BoardHelper.
+	 * After compute() it goes from an owned country to <code>, after computeToContinent() from <code> into the continent.
+	 * @return The route, or null if there is none
+	 */
+	public int[] getRoute(int code) {
+		if (seed[code] == -1) {
+			return null;
+		}
+		int length = 1;
+		for (int c = code; link[c] != -1; c = link[c]) {
+			length++;
+		}
+		int[] route = new int[length];
+		for (int c = code, i = 0; i < length; c = link[c], i++) {
+			route[reverse ? i : length - 1 - i] = c;
+		}
+		return route;
+	}
+
+	private void clear() {
+		heapSize = 0;
+		for (int i = 0; i < size; i++) {
+			settled[i] = false;
+			link[i] = -1;
+			seed[i] = -1;
+			cost[i] = UNREACHABLE;
+		}
+	}
+
+	private void start(int code, int startCost) {
+		cost[code] = startCost;
+		seed[code] = code;
+		push(startCost, code);
+	}
+
+	// Every country on a route that is not owned by <owner> costs its armies. A forward search adds them as it enters
+	// a country, a reverse search as it steps back to the country a border comes from
+	private void search(int owner, int[][] borders) {
+		while (heapSize > 0) {
+			int current = (int) pop();
+			if (settled[current]) {
+				continue;
+			}
+			settled[current] = true;
+			if (reverse && countries[current].getOwner() == owner) {
+				// a route into the continent can start here, but not pass through
+				continue;
+			}
+			int[] neighbors = borders[current];
+			for (int n = 0; n < neighbors.length; n++) {
+				int next = neighbors[n];
+				if (settled[next] || (!reverse && countries[next].getOwner() == owner)) {
+					continue;
+				}
+				int nextCost = cost[current] + (countries[next].getOwner() == owner ? 0 : countries[next].getArmies());
+				if (nextCost < cost[next]) {
+					cost[next] = nextCost;
+					link[next] = current;
+					seed[next] = seed[current];
+					push(nextCost, next);
+				}
+			}
+		}
+	}
+
+	private void push(int entryCost, int code) {
+		long entry = ((long) entryCost << 32) | code;
+		int i = heapSize++;
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (heap[parent] <= entry) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = entry;
+	}
+
+	private long pop() {
+		long result = heap[0];
+		long last = heap[--heapSize];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= last) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		if (heapSize > 0) {
+			heap[i] = last;
+		}
+		return result;
+	}
+}
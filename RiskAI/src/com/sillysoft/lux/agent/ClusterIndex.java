@@ -0,0 +1,209 @@
+package com.sillysoft.lux.agent;
+
+import com.sillysoft.lux.*;
+
+import java.util.Arrays;
+
+/**
+ * The connected clusters of one player's countries, and the border countries of each cluster.
+ *
+ * Clusters are kept in a union-find forest. Each cluster also has a list of its border countries
+ * (countries with at least one neighbor owned by someone else).
+ *
+ * Before each query the index compares the board with the owners it last saw, which is a plain scan with no graph search:
+ *   - a country that became ours is merged into the clusters of its owned neighbors, and the neighbors
+ *     that no longer touch an enemy stop being borders;
+ *   - a country that we lost can split a cluster, so the whole index is rebuilt.
+ * During our attack phase we only ever gain countries, so the clusters are never rebuilt there.
+ */
+public class ClusterIndex {
+
+	private final int ownerID;
+	private final Country[] countries;
+	private final int size;
+
+	// the owners we last saw: is the country ours?
+	private final boolean[] ours;
+	private final boolean[] border;
+
+	// union-find forest over our countries. parent is -1 for countries that are not ours
+	private final int[] parent;
+	private final int[] clusterSize;
+
+	// for each cluster root, a linked list of the countries that were borders when they joined.
+	// Countries that have since stopped being borders are skipped when the list is read
+	private final int[] head;
+	private final int[] tail;
+	private final int[] next;
+
+	private final int[] gained;
+	private final int[] buffer;
+	private boolean built;
+
+	public ClusterIndex(int ownerID, Country[] countries) {
+		this.ownerID = ownerID;
+		this.countries = countries;
+		size = countries.length;
+		ours = new boolean[size];
+		border = new boolean[size];
+		parent = new int[size];
+		clusterSize = new int[size];
+		head = new int[size];
+		tail = new int[size];
+		next = new int[size];
+		gained = new int[size];
+		buffer = new int[size];
+	}
+
+	/** Throw away the index, so it is rebuilt on the next query. */
+	public void invalidate() {
+		built = false;
+	}
+
+	/**
+	 * The border countries of the cluster containing <root>, in ascending code order.
+	 * The order does not depend on which country of the cluster is the root, unlike a search from the root.
+	 * The array is a new copy, so it can be iterated while attacking.
+	 * @return The codes of the borders, or null if <root> is not owned by this index's player
+	 */
+	public int[] getBorders(int root) {
+		sync();
+		if (!ours[root]) {
+			return null;
+		}
+		int count = 0;
+		for (int code = head[find(root)]; code != -1; code = next[code]) {
+			if (border[code]) {
+				buffer[count++] = code;
+			}
+		}
+		int[] result = Arrays.copyOf(buffer, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * An id for the cluster containing <code>. Every country in a cluster has the same id,
+	 * until the clusters change again.
+	 * @return The id, or -1 if <code> is not owned by this index's player
+	 */
+	public int getClusterId(int code) {
+		sync();
+		return getKnownClusterId(code);
+	}
+
+	/** Bring the index up to date with the board. */
+	public void update() {
+		sync();
+	}
+
+	/**
+	 * Like getClusterId(), but without checking the board for changes since the last query or update().
+	 * For callers that look up many countries after one update().
+	 */
+	public int getKnownClusterId(int code) {
+		return ours[code] ? find(code) : -1;
+	}
+
+	private void sync() {
+		if (!built) {
+			rebuild();
+			return;
+		}
+		int gainedCount = 0;
+		for (int code = 0; code < size; code++) {
+			boolean now = countries[code].getOwner() == ownerID;
+			if (now != ours[code]) {
+				if (!now) {
+					// a lost country can split its cluster
+					rebuild();
+					return;
+				}
+				gained[gainedCount++] = code;
+			}
+		}
+		for (int i = 0; i < gainedCount; i++) {
+			add(gained[i]);
+		}
+	}
+
+	private void rebuild() {
+		for (int code = 0; code < size; code++) {
+			ours[code] = countries[code].getOwner() == ownerID;
+			parent[code] = -1;
+		}
+		for (int code = 0; code < size; code++) {
+			if (ours[code]) {
+				add(code);
+			}
+		}
+		built = true;
+	}
+
+	// <code> has become ours: make it a cluster of its own and merge it with its owned neighbors
+	private void add(int code) {
+		ours[code] = true;
+		parent[code] = code;
+		clusterSize[code] = 1;
+		head[code] = -1;
+		tail[code] = -1;
+		border[code] = hasEnemyNeighbor(code);
+		if (border[code]) {
+			next[code] = -1;
+			head[code] = code;
+			tail[code] = code;
+		}
+		int[] neighbors = countries[code].getAdjoiningCodeList();
+		for (int i = 0; i < neighbors.length; i++) {
+			int neighbor = neighbors[i];
+			if (parent[neighbor] != -1) {
+				union(code, neighbor);
+				if (border[neighbor] && !hasEnemyNeighbor(neighbor)) {
+					border[neighbor] = false;
+				}
+			}
+		}
+	}
+
+	private boolean hasEnemyNeighbor(int code) {
+		int[] neighbors = countries[code].getAdjoiningCodeList();
+		for (int i = 0; i < neighbors.length; i++) {
+			if (!ours[neighbors[i]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int find(int code) {
+		while (parent[code] != code) {
+			parent[code] = parent[parent[code]];
+			code = parent[code];
+		}
+		return code;
+	}
+
+	// merge the smaller cluster into the bigger one, joining their border lists
+	private void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a == b) {
+			return;
+		}
+		if (clusterSize[a] < clusterSize[b]) {
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		parent[b] = a;
+		clusterSize[a] += clusterSize[b];
+		if (head[b] != -1) {
+			if (head[a] == -1) {
+				head[a] = head[b];
+			} else {
+				next[tail[a]] = head[b];
+			}
+			tail[a] = tail[b];
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * A reusable breadth first walk over country codes.
+ *
+ * Visited countries are marked in a bitset and queued in an int array, both sized for the board once,
+ * so a walk allocates nothing and checking whether a country was already reached is a single bit test.
+ * The usual loop is:
+ *   walk.clear();
+ *   walk.visit(start);
+ *   while (walk.hasNext()) {
+ *       int code = walk.next();
+ *       ... walk.visit(neighbor) for the neighbors that belong in the walk ...
+ *   }
+ * Countries come out of next() in the order they were visited.
+ */
+public class ClusterWalk {
+
+	private final long[] visited;
+	private final int[] queue;
+	private int head;
+	private int tail;
+
+	public ClusterWalk(int numberOfCountries) {
+		visited = new long[(numberOfCountries + 63) >> 6];
+		queue = new int[numberOfCountries];
+	}
+
+	/** Forget every visited country. Only the bits that were set are cleared, so this is as cheap as the last walk. */
+	public void clear() {
+		for (int i = 0; i < tail; i++) {
+			visited[queue[i] >> 6] = 0;
+		}
+		head = 0;
+		tail = 0;
+	}
+
+	/**
+	 * Add <code> to the end of the queue, unless it has already been visited.
+	 * @return true if the country had not been visited before
+	 */
+	public boolean visit(int code) {
+		long bit = 1L << code;
+		if ((visited[code >> 6] & bit) != 0) {
+			return false;
+		}
+		visited[code >> 6] |= bit;
+		queue[tail++] = code;
+		return true;
+	}
+
+	public boolean isVisited(int code) {
+		return (visited[code >> 6] & (1L << code)) != 0;
+	}
+
+	/** Are there visited countries that have not been taken out with next() yet? */
+	public boolean hasNext() {
+		return head < tail;
+	}
+
+	/** Take the next country out of the queue. */
+	public int next() {
+		return queue[head++];
+	}
+
+	/** The number of countries visited since the last clear(). */
+	public int size() {
+		return tail;
+	}
+
+	/** The <i>th country visited since the last clear(). */
+	public int get(int i) {
+		return queue[i];
+	}
+}
@@ -0,0 +1,137 @@
+package com.sillysoft.lux.agent;
+
+import com.sillysoft.lux.*;
+
+import java.util.Arrays;
+
+/**
+ * The number of countries and armies each player has in each continent, and on the whole board.
+ *
+ * Like EvaluationCache, the table keeps its own copy of every country's owner and army count. sync() re-reads
+ * the board at the start of a phase, and after each placement, attack or fortification the agent reports the
+ * countries involved with countryChanged(), which moves their counts between players in O(1).
+ * The questions BoardHelper answers by scanning every country (does a player own a continent, how many armies
+ * does it have there) are then array reads.
+ *
+ * Countries nobody has picked yet have owner -1, which has its own column, so playerOwnsContinent(-1, cont)
+ * asks whether a continent is still empty.
+ */
+public class ContinentStats {
+
+	private final Country[] countries;
+	private final int size;
+	// player IDs are shifted up by one so owner -1 has a column
+	private final int columns;
+
+	private final int[] continent;
+	private final int[] continentSize;
+
+	// the board as it was last read
+	private final int[] owner;
+	private final int[] armies;
+
+	// [continent * columns + owner + 1]
+	private final int[] countryCount;
+	private final int[] armyCount;
+	// [owner + 1], over the whole board
+	private final int[] playerCountries;
+	private final int[] playerArmies;
+	private final int[] continentArmies;
+
+	public ContinentStats(Country[] countries, int numberOfContinents, int numberOfPlayers) {
+		this.countries = countries;
+		size = countries.length;
+		columns = numberOfPlayers + 1;
+		continent = new int[size];
+		continentSize = new int[numberOfContinents];
+		for (int i = 0; i < size; i++) {
+			continent[i] = countries[i].getContinent();
+			continentSize[continent[i]]++;
+		}
+		owner = new int[size];
+		armies = new int[size];
+		countryCount = new int[numberOfContinents * columns];
+		armyCount = new int[numberOfContinents * columns];
+		playerCountries = new int[columns];
+		playerArmies = new int[columns];
+		continentArmies = new int[numberOfContinents];
+		sync();
+	}
+
+	/** Forget the counts and re-read the board. Call it at the start of each phase, as other players change the board in between. */
+	public void sync() {
+		Arrays.fill(countryCount, 0);
+		Arrays.fill(armyCount, 0);
+		Arrays.fill(playerCountries, 0);
+		Arrays.fill(playerArmies, 0);
+		Arrays.fill(continentArmies, 0);
+		for (int i = 0; i < size; i++) {
+			owner[i] = countries[i].getOwner();
+			armies[i] = countries[i].getArmies();
+			count(i, 1);
+		}
+	}
+
+	/** Tell the table that the owner or army count of <country> may have changed. */
+	public void countryChanged(Country country) {
+		int code = country.getCode();
+		if (country.getOwner() == owner[code] && country.getArmies() == armies[code]) {
+			return;
+		}
+		count(code, -1);
+		owner[code] = country.getOwner();
+		armies[code] = country.getArmies();
+		count(code, 1);
+	}
+
+	// add (sign 1) or take away (sign -1) the country <code> as last read
+	private void count(int code, int sign) {
+		int column = owner[code] + 1;
+		int cell = continent[code] * columns + column;
+		countryCount[cell] += sign;
+		armyCount[cell] += sign * armies[code];
+		playerCountries[column] += sign;
+		playerArmies[column] += sign * armies[code];
+		continentArmies[continent[code]] += sign * armies[code];
+	}
+
+	/** The number of countries in continent <cont>. */
+	public int getContinentSize(int cont) {
+		return continentSize[cont];
+	}
+
+	/** The number of countries <player> owns in continent <cont>. */
+	public int getCountriesInContinent(int player, int cont) {
+		return countryCount[cont * columns + player + 1];
+	}
+
+	/** The number of armies <player> has in continent <cont>. */
+	public int getPlayerArmiesInContinent(int player, int cont) {
+		return armyCount[cont * columns + player + 1];
+	}
+
+	/** The number of armies in continent <cont> that do not belong to <player>. */
+	public int getEnemyArmiesInContinent(int player, int cont) {
+		return continentArmies[cont] - getPlayerArmiesInContinent(player, cont);
+	}
+
+	/** Does <player> own every country of continent <cont>? */
+	public boolean playerOwnsContinent(int player, int cont) {
+		return getCountriesInContinent(player, cont) == continentSize[cont];
+	}
+
+	/** Does <player> own at least one country of continent <cont>? */
+	public boolean playerOwnsContinentCountry(int player, int cont) {
+		return getCountriesInContinent(player, cont) > 0;
+	}
+
+	/** The number of countries <player> owns on the whole board. */
+	public int getPlayerCountries(int player) {
+		return playerCountries[player + 1];
+	}
+
+	/** The number of armies <player> has on the whole board. */
+	public int getPlayerArmies(int player) {
+		return playerArmies[player + 1];
+	}
+}
@@ -0,0 +1,61 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * A first-in first-out queue of country codes in which each country is at most once.
+ * Adding a country that is already waiting does nothing, but a country can be added again after it has been taken out.
+ * The storage is sized for the board once, so using the list allocates nothing.
+ */
+public class CountryWorklist {
+
+	private final long[] waiting;
+	private final int[] queue;
+	private int head;
+	private int count;
+
+	public CountryWorklist(int numberOfCountries) {
+		waiting = new long[(numberOfCountries + 63) >> 6];
+		queue = new int[numberOfCountries];
+	}
+
+	public void clear() {
+		while (count > 0) {
+			next();
+		}
+		head = 0;
+	}
+
+	/**
+	 * Add <code> to the end of the list, unless it is already waiting.
+	 * @return true if it was added
+	 */
+	public boolean add(int code) {
+		long bit = 1L << code;
+		if ((waiting[code >> 6] & bit) != 0) {
+			return false;
+		}
+		waiting[code >> 6] |= bit;
+		int tail = head + count;
+		if (tail >= queue.length) {
+			tail -= queue.length;
+		}
+		queue[tail] = code;
+		count++;
+		return true;
+	}
+
+	public boolean hasNext() {
+		return count > 0;
+	}
+
+	/** Take out the country that has waited longest. */
+	public int next() {
+		int code = queue[head];
+		head++;
+		if (head == queue.length) {
+			head = 0;
+		}
+		count--;
+		waiting[code >> 6] &= ~(1L << code);
+		return code;
+	}
+}
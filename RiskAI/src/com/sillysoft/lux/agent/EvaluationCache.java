@@ -0,0 +1,317 @@
+package com.sillysoft.lux.agent;
+
+import com.sillysoft.lux.*;
+
+import java.util.Arrays;
+
+/**
+ * A turn-scoped memo of the values Learner uses to score countries.
+ *
+ * The cache keeps its own copy of every country's owner and army count, taken by sync() at the start of each phase.
+ * During the phase the only changes to the board are the ones we make ourselves, so after each placement, attack
+ * or fortification the agent reports the countries involved with countryChanged(). The cache then patches the
+ * distance-weighted troop sums of every country in place. Continent ownership lives in ContinentStats.
+ *
+ * The troop sums are computed for the whole board at once: the matrix of inverse route lengths from
+ * BoardDistances times the vectors of enemy and friendly armies, in one pass over flat arrays.
+ * On large boards the rows of that pass are split across threads with ParallelScoring.
+ *
+ * Values are kept per weight vector (deploy, attack and fortify weights are scored separately), and the
+ * player-wide values (advantage and recklessness) are tagged with the board version they were computed at.
+ *
+ * The cache also keeps, for every country, a bitmask of the players that own its neighbors, and a mask of the
+ * players that still own a country. Both are patched when a country changes hands, so counting the enemies around
+ * a country or listing the players left never allocates. Player IDs must be below 64.
+ */
+public class EvaluationCache {
+
+	/** The memoized values for one weight vector. */
+	public class Slot {
+		private final float[] weightsRef;
+		private final float[] weightValues;
+
+		// distance-weighted enemy and friendly troops around each country
+		private final float[] enemyTroops;
+		private final float[] friendlyTroops;
+		private boolean hasTroops;
+
+		private float advantage;
+		private int advantageVersion = -1;
+
+		private float recklessness;
+		private int recklessnessVersion = -1;
+
+		// the rows of the troop sums are independent, so large boards fill them on several threads
+		private final ParallelScoring.RangeTask troopRows = new ParallelScoring.RangeTask() {
+			public void run(int from, int to) {
+				fillTroopRows(from, to);
+			}
+		};
+
+		private Slot(float[] weights) {
+			weightsRef = weights;
+			weightValues = weights.clone();
+			enemyTroops = new float[size];
+			friendlyTroops = new float[size];
+		}
+
+		private boolean matches(float[] weights) {
+			return weightsRef == weights && Arrays.equals(weightValues, weights);
+		}
+
+		private void clear() {
+			hasTroops = false;
+			advantageVersion = -1;
+			recklessnessVersion = -1;
+		}
+
+		public boolean hasTroops() {
+			return hasTroops;
+		}
+		public float getEnemyTroops(int code) {
+			return enemyTroops[code];
+		}
+		public float getFriendlyTroops(int code) {
+			return friendlyTroops[code];
+		}
+
+		/**
+		 * Compute the troop sums of every country, from the board as last read.
+		 * Each sum is the same as adding up Learner.calculateWeightedTroopValue() over the enemy or friendly countries.
+		 */
+		public void fillTroops() {
+			for (int j = 0; j < size; j++) {
+				boolean enemy = owner[j] != ownerID;
+				enemyArmyVector[j] = enemy ? armies[j] : 0;
+				friendlyArmyVector[j] = enemy ? 0 : armies[j];
+			}
+			scoring.forRange(size, troopRows);
+			hasTroops = true;
+		}
+
+		private void fillTroopRows(int from, int to) {
+			float troopWeight = weightValues[3];
+			for (int i = from; i < to; i++) {
+				int row = i * size;
+				float enemy = 0;
+				float friendly = 0;
+				for (int j = 0; j < size; j++) {
+					float inverse = inverseRouteLengths[row + j];
+					enemy += inverse * enemyArmyVector[j];
+					friendly += inverse * friendlyArmyVector[j];
+				}
+				enemyTroops[i] = troopWeight * enemy;
+				friendlyTroops[i] = troopWeight * friendly;
+			}
+		}
+
+		public boolean hasAdvantage() {
+			return advantageVersion == version;
+		}
+		public float getAdvantage() {
+			return advantage;
+		}
+		public void setAdvantage(float value) {
+			advantage = value;
+			advantageVersion = version;
+		}
+
+		public boolean hasRecklessness() {
+			return recklessnessVersion == version;
+		}
+		public float getRecklessness() {
+			return recklessness;
+		}
+		public void setRecklessness(float value) {
+			recklessness = value;
+			recklessnessVersion = version;
+		}
+	}
+
+	// Learner only ever scores with its deploy, attack and fortify weights
+	private static final int MAX_SLOTS = 3;
+
+	private final int ownerID;
+	private final int size;
+	private final Country[] countries;
+	// [from * size + to], 0 where there is no route
+	private final float[] inverseRouteLengths;
+	// scratch for fillTroops(): the armies of each country, split by whether they are ours
+	private final float[] enemyArmyVector;
+	private final float[] friendlyArmyVector;
+	private final ParallelScoring scoring;
+
+	// the board as it was when the cached values were computed
+	private final int[] owner;
+	private final int[] armies;
+	private int enemyArmies;
+	private int version;
+
+	// bit p of neighborOwners[x] is set if player p owns a country x can attack
+	private final long[] neighborOwners;
+	private final int[][] adjoining;
+	// the countries that can attack each country, whose neighborOwners change with its owner
+	private final int[][] attackedFrom;
+	private final int[] countriesOwned = new int[64];
+	private long livePlayers;
+
+	private final Slot[] slots = new Slot[MAX_SLOTS];
+	private int nextSlot;
+
+	/**
+	 * @param scoring Decides whether the troop sums are filled on several threads
+	 */
+	public EvaluationCache(int ownerID, Country[] countries, BoardDistances distances, ParallelScoring scoring) {
+		this.ownerID = ownerID;
+		this.countries = countries;
+		this.scoring = scoring;
+		inverseRouteLengths = distances.inverseRouteLengths();
+		size = countries.length;
+		enemyArmyVector = new float[size];
+		friendlyArmyVector = new float[size];
+		owner = new int[size];
+		armies = new int[size];
+		neighborOwners = new long[size];
+		adjoining = BoardDistances.adjoiningCodes(countries);
+		attackedFrom = BoardDistances.incomingCodes(adjoining);
+		sync();
+	}
+
+	/**
+	 * Forget everything and re-read the board.
+	 * This must be called at the start of each phase, since other players (and card cashes) change the board between our phases.
+	 */
+	public void sync() {
+		enemyArmies = 0;
+		Arrays.fill(countriesOwned, 0);
+		livePlayers = 0;
+		for (int i = 0; i < size; i++) {
+			owner[i] = countries[i].getOwner();
+			armies[i] = countries[i].getArmies();
+			if (owner[i] != ownerID) {
+				enemyArmies += armies[i];
+			}
+			if (owner[i] >= 0) {
+				countriesOwned[owner[i]]++;
+			}
+			livePlayers |= ownerBit(owner[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			updateNeighborOwners(i);
+		}
+		for (int i = 0; i < MAX_SLOTS; i++) {
+			if (slots[i] != null) {
+				slots[i].clear();
+			}
+		}
+		version++;
+	}
+
+	/** The cached values for the given weight vector. A vector whose contents have changed gets fresh values. */
+	public Slot slot(float[] weights) {
+		for (int i = 0; i < MAX_SLOTS; i++) {
+			if (slots[i] != null && slots[i].matches(weights)) {
+				return slots[i];
+			}
+		}
+		Slot result = new Slot(weights);
+		slots[nextSlot] = result;
+		nextSlot = (nextSlot + 1) % MAX_SLOTS;
+		return result;
+	}
+
+	/** Incremented every time the board changes. */
+	public int getVersion() {
+		return version;
+	}
+
+	/** A bitmask of the players that own at least one country: bit p is set for player p. */
+	public long getLivePlayers() {
+		return livePlayers;
+	}
+
+	/** A bitmask of the owners of the countries <code> can attack: bit p is set for player p. */
+	public long getNeighborOwners(int code) {
+		return neighborOwners[code];
+	}
+
+	/** The number of different players, other than its own owner, that own a country <code> can attack. */
+	public int getNumberOfHostileNeighborOwners(int code) {
+		return Long.bitCount(neighborOwners[code] & ~ownerBit(owner[code]));
+	}
+
+	/** The total number of armies on the board that are not ours. */
+	public int getEnemyArmies() {
+		return enemyArmies;
+	}
+
+	/**
+	 * Tell the cache that the owner or army count of <country> may have changed.
+	 * The troop sums of every country are adjusted by the difference, and the owner masks are patched
+	 * if <country> changed hands.
+	 */
+	public void countryChanged(Country country) {
+		int code = country.getCode();
+		int newOwner = country.getOwner();
+		int newArmies = country.getArmies();
+		int oldOwner = owner[code];
+		int oldArmies = armies[code];
+		if (newOwner == oldOwner && newArmies == oldArmies) {
+			return;
+		}
+
+		if (oldOwner != ownerID) {
+			enemyArmies -= oldArmies;
+		}
+		if (newOwner != ownerID) {
+			enemyArmies += newArmies;
+		}
+		owner[code] = newOwner;
+		armies[code] = newArmies;
+		version++;
+
+		if (newOwner != oldOwner) {
+			if (oldOwner >= 0 && --countriesOwned[oldOwner] == 0) {
+				livePlayers &= ~ownerBit(oldOwner);
+			}
+			if (newOwner >= 0) {
+				countriesOwned[newOwner]++;
+			}
+			livePlayers |= ownerBit(newOwner);
+			for (int i = 0; i < attackedFrom[code].length; i++) {
+				updateNeighborOwners(attackedFrom[code][i]);
+			}
+		}
+		// the change to the enemy and friendly army vectors, spread over one column of the matrix
+		int enemyChange = (newOwner != ownerID ? newArmies : 0) - (oldOwner != ownerID ? oldArmies : 0);
+		int friendlyChange = (newOwner == ownerID ? newArmies : 0) - (oldOwner == ownerID ? oldArmies : 0);
+		for (int s = 0; s < MAX_SLOTS; s++) {
+			Slot slot = slots[s];
+			if (slot == null || !slot.hasTroops) {
+				continue;
+			}
+			float enemyValue = slot.weightValues[3] * enemyChange;
+			float friendlyValue = slot.weightValues[3] * friendlyChange;
+			for (int x = 0; x < size; x++) {
+				float inverse = inverseRouteLengths[x * size + code];
+				slot.enemyTroops[x] += enemyValue * inverse;
+				slot.friendlyTroops[x] += friendlyValue * inverse;
+			}
+		}
+	}
+
+	// a neighbor's owner can only be dropped from the mask if no other neighbor has the same owner, so rebuild it
+	private void updateNeighborOwners(int code) {
+		long owners = 0;
+		int[] neighbors = adjoining[code];
+		for (int i = 0; i < neighbors.length; i++) {
+			owners |= ownerBit(owner[neighbors[i]]);
+		}
+		neighborOwners[code] = owners;
+	}
+
+	// the mask bit of <player>. Countries nobody has picked yet have owner -1 and no bit
+	private static long ownerBit(int player) {
+		return player >= 0 ? 1L << player : 0;
+	}
+}
@@ -6,15 +6,9 @@ import com.sillysoft.lux.util.*;
 
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.Random;
-import java.util.List;
-import java.util.ArrayList;
 
 /**
  * This class is an adaptive AI that was designed for CSE 5523 (Machine Learning) at The Ohio State University.
@@ -28,13 +22,31 @@ public class Learner extends SmartAgentBase {
 		float recklessFortifyThreshold;
 		float recklessCardThreshold;
 	// fine-tuning weights that can be adjusted via the rule set
-		Rule[] deployRules, attackRules, fortifyRules;
+		RuleTable deployRules, attackRules, fortifyRules;
 		float[] deployWeights, attackWeights, fortifyWeights;
 		// A filename for the log
 		private String fileName;
+		private LearnerLog log;
 		private String rulesPath = Board.getAgentPath() + "rules.txt";
+		private static final float DEFAULT_WEIGHT = 1.0f; // used for a letter that has no rules
+		private static final float PLAUSIBLE_ATTACK_ODDS = 0.5f; // the lowest chance of taking a target that is worth attacking
 		private float explorationThreshold = 0.15f; // probability to explore instead of exploit (0.0 - 1.0 range)
 		private String[] lettersArray = {"A","B","C","D","E","F","G","H","I","J","K","L","M"};
+	// hop distances between every pair of countries, built once per game in setPrefs
+		private BoardDistances distances;
+	// memoized scoring values for the current phase, patched as we change the board
+		private EvaluationCache cache;
+	// the possible attacks of the current attack phase, best first
+		private AttackCandidates candidates;
+	// splits scoring loops across threads on large boards
+		private ParallelScoring scoring;
+	// the attackOrder of every country at the start of the attack phase, NaN for our own
+		private float[] targetOrder;
+		private final ParallelScoring.Score targetScore = new ParallelScoring.Score() {
+			public float score(int code) {
+				return countries[code].getOwner()==ID ? Float.NaN : attackOrder(countries[code]);
+			}
+		};
 
 	public float version() {
 		return 1.0f;
@@ -50,6 +62,17 @@ public class Learner extends SmartAgentBase {
 		return result;
 	}
 
+	@Override
+	public void setPrefs( int newID, Board theboard )
+	{
+		super.setPrefs(newID, theboard);
+		distances = new BoardDistances(countries);
+		scoring = new ParallelScoring(numCountries);
+		cache = new EvaluationCache(ID, countries, distances, scoring);
+		candidates = new AttackCandidates(BoardDistances.adjoiningCodes(countries));
+		targetOrder = new float[numCountries];
+	}
+
 	@Override
 	public void placeInitialArmies( int numberOfArmies )
 	{
@@ -58,29 +81,41 @@ public class Learner extends SmartAgentBase {
 	
 	public void placeArmies( int numberOfArmies )
 	{
+		budget.begin(PhaseBudget.PLACE);
 		setup();
-		Country mostValuableCountry = null;
-		float largestStrategicValue=-100000;
-		// Use a PlayerIterator to cycle through all the countries that we own.
+		// Score all the countries that we own once.
+		// The strategic value is (recklessness^2 * importance) / vulnerability, and each army placed on a country
+		// lowers its vulnerability by one army at distance 1. So the allocator can hand out the whole income
+		// by updating only the value of the country that just received an army.
+		float currentRecklessness = currentRecklessness(deployWeights);
+		ArmyAllocator allocator = new ArmyAllocator(numCountries);
 		CountryIterator own = new PlayerIterator( ID, countries );
-		while(numberOfArmies>0)
+		while (own.hasNext()) 
 		{
-			while (own.hasNext()) 
+			// past the placement budget the armies go to the countries scored so far
+			if (allocator.getNumberOfCandidates() > 0 && budget.tier(PhaseBudget.PLACE) != PhaseBudget.FULL)
 			{
-				Country us = own.next();
-				float strategicValue=calculateStrategicValue(us, deployWeights);
-				
-				// If it's the best so far store it
-				if ( strategicValue > largestStrategicValue )
-				{
-					largestStrategicValue=strategicValue;
-					mostValuableCountry=us;
-				}
+				break;
 			}
-			board.placeArmies( 1, mostValuableCountry);
-			numberOfArmies--;
+			Country us = own.next();
+			float weight = currentRecklessness*calculateImportance(us, deployWeights)*currentRecklessness;
+			allocator.addCandidate(us.getCode(), weight, calculateVulnerability(us, deployWeights));
+		}
+		allocator.allocate(numberOfArmies, deployWeights[3]);
+
+		// then place each country's share with a single board call
+		for (int i=0; i<allocator.getNumberOfCandidates(); i++)
+		{
+			if (allocator.getPlaced(i) > 0)
+			{
+				Country destination = countries[allocator.getCode(i)];
+				board.placeArmies( allocator.getPlaced(i), destination);
+				cache.countryChanged(destination);
+				continentStats.countryChanged(destination);
 			}
 		}
+		budget.end(PhaseBudget.PLACE);
+	}
 	
 	public void cardsPhase( Card[] cards )
 	{
@@ -99,45 +134,74 @@ public class Learner extends SmartAgentBase {
 public void attackPhase()
 {
 //We choose a target and attack, then evaluate if we should continue attacking
+// Every pair of (one of our countries with 4 or more armies, a neighboring enemy country) is a possible attack.
+// It is never wise to attack with less than 4 armies (3 committed to attack)
+// The target with the lowest Strategic value is attacked first.
+// The pairs are kept in a priority queue, and after each battle only the pairs that the battle could change are rescored.
+budget.begin(PhaseBudget.ATTACK);
+cache.sync();
+continentStats.sync();
+snapshot.refresh();
+candidates.clear();
+// A target's score does not depend on the attacker, so score every country once (across threads on large boards),
+// then queue the pairs in order. The troop sums are filled first so that the scoring threads only read the cache
+EvaluationCache.Slot slot=cache.slot(attackWeights);
+if(!slot.hasTroops())
+{
+	slot.fillTroops();
+}
+scoring.scoreAll(numCountries, targetOrder, targetScore);
+for(int pair=0; pair<candidates.getPairsFromEnd(numCountries-1); pair++)
+{
+	queueAttack(pair, attackPossible(pair) ? targetOrder[candidates.getTarget(pair)] : Float.NaN);
+}
 int countriesConquered=0;
 boolean stillAttacking=true;
 while(stillAttacking)
 {
-	// Cycle through all of the countries that we have 4 or more armies on. 
-	// It is never wise to attack with less than 4 armies (3 committed to attack)
-	// We look through all owned countries that are able to attack,
-	// and check the strategic value of of the neighboring enemy countries
-	// The enemy country with the lowest Strategic value is selected as the attack target 
-	// After checking all possible attacking countries 
-	CountryIterator armies = new ArmiesIterator( ID, 4, countries );
+	// Past the attack budget each queued battle is fought to the end in one call,
+	// and past twice the budget we stop attacking
+	int tier=budget.tier(PhaseBudget.ATTACK);
+	if(tier==PhaseBudget.MINIMAL)
+	{
+		break;
+	}
 	Country attacker=null;
 	Country target=null;
-	float lowestStrategicValue=1000000;
-	while (armies.hasNext()) 
+	boolean attackTillDead=tier!=PhaseBudget.FULL;
+	// Vulnerability weighs armies all over the board, so any queued score may be stale, better or worse than it is now.
+	// Only the best pair is rescored, until a freshly rescored pair stays on top. So the pick approximates the full
+	// scan the queue replaced: a pair whose stale score is worse than its current one can be passed over.
+	// Rescoring every pair would make it exact, at the cost of that full scan
+	int pair=-1;
+	while(!candidates.isEmpty() && candidates.peek()!=pair)
 	{
-		Country us = armies.next();
-		int[] possibleTargets=us.getHostileAdjoiningCodeList();
-		for(int i=0; i<possibleTargets.length; i++)
+		pair=candidates.peek();
+		rescoreAttack(pair);
+	}
+	if(!candidates.isEmpty())
+	{
+		// the queue is ordered without recklessness (see attackOrder), so check the full strategic value of the best pair
+		if(calculateStrategicValue(countries[candidates.getTarget(pair)], attackWeights)<1000000)
 		{
-			float strategicValue=calculateStrategicValue(countries[possibleTargets[i]], attackWeights);
-			//if target has low strategic value (should be taken)
-			// and is plausible attack (can be taken), we set this as current preferred target
-			if(strategicValue<lowestStrategicValue&&plausibleAttack(us,countries[possibleTargets[i]]))
-			{
-				lowestStrategicValue=strategicValue;
-				attacker=us;
-				target=countries[possibleTargets[i]];
-			}
+			attacker=countries[candidates.getAttacker(pair)];
+			target=countries[candidates.getTarget(pair)];
 		}
 	}
 	//If target found
 	if(target!=null)
 	{
-		board.attack(attacker, target, false);
-		if(target.getOwner()==ID)
+		board.attack(attacker, target, attackTillDead);
+		cache.countryChanged(attacker);
+		cache.countryChanged(target);
+		continentStats.countryChanged(attacker);
+		continentStats.countryChanged(target);
+		boolean conquered=target.getOwner()==ID;
+		if(conquered)
 		{
 			countriesConquered++;
 		}
+		rescoreAttacksAfterBattle(attacker.getCode(), target.getCode(), conquered);
 		stillAttacking=evaluateAttackPhase(countriesConquered);
 	}
 	else
@@ -145,17 +209,93 @@ while(stillAttacking)
 		stillAttacking=false;
 	}
 }
+budget.end(PhaseBudget.ATTACK);
+}
+
+/**
+ * The order in which attack targets are chosen: the strategic value without the recklessness factor.
+ * The strategic value is recklessness^2 * importance / vulnerability, and recklessness depends on the whole board,
+ * so it changes after every battle by the same factor for every target. Leaving it out keeps the scores of pairs
+ * that were not rescored comparable with the fresh ones.
+ */
+private float attackOrder(Country target)
+{
+	return calculateImportance(target, attackWeights)/calculateVulnerability(target, attackWeights);
+}
+
+// Queue or requeue the attack from <attacker> to <target>, or drop it if it is no longer possible
+private void rescoreAttack(int pair)
+{
+	queueAttack(pair, attackPossible(pair) ? attackOrder(countries[candidates.getTarget(pair)]) : Float.NaN);
+}
+
+private boolean attackPossible(int pair)
+{
+	Country us=countries[candidates.getAttacker(pair)];
+	Country them=countries[candidates.getTarget(pair)];
+	return us.getOwner()==ID && us.getArmies()>=4 && them.getOwner()!=ID && plausibleAttack(us, them);
+}
+
+// Queue the attack of <pair> with the score <order>, or drop it if the score is NaN
+private void queueAttack(int pair, float order)
+{
+	if(order==order) // not NaN
+	{
+		candidates.set(pair, order);
+	}
+	else
+	{
+		candidates.remove(pair);
+	}
+}
+
+private void rescoreAttacksFrom(int code)
+{
+	for(int pair=candidates.getPairsFromStart(code); pair<candidates.getPairsFromEnd(code); pair++)
+	{
+		rescoreAttack(pair);
+	}
+}
+
+private void rescoreAttacksInto(int code)
+{
+	for(int i=0; i<candidates.getNumberOfPairsInto(code); i++)
+	{
+		rescoreAttack(candidates.getPairInto(code, i));
+	}
+}
+
+// A battle changes the armies of both countries. If the target changed hands, it also changes how divided its neighbors are.
+private void rescoreAttacksAfterBattle(int attacker, int target, boolean conquered)
+{
+	rescoreAttacksFrom(attacker);
+	rescoreAttacksInto(attacker);
+	rescoreAttacksFrom(target);
+	rescoreAttacksInto(target);
+	if(conquered)
+	{
+		int[] neighbors=countries[target].getAdjoiningCodeList();
+		for(int i=0; i<neighbors.length; i++)
+		{
+			rescoreAttacksInto(neighbors[i]);
+		}
+	}
 }
 
 public int moveArmiesIn( int cca, int ccd)
 {
+// This takes the same short time on any board, so it is timed but never has to fall back
+budget.begin(PhaseBudget.MOVE_IN);
+int result;
 // If the defending country has no adjacent enemies we keep the maximum number of troops
 // possible in the attacking country
 if ( countries[ccd].getHostileAdjoiningCodeList().length>0 )
-	return 0;
-
+	result=0;
 // Otherwise we move everyone into the newly conquered country
-return countries[cca].getArmies()-1;
+else
+	result=countries[cca].getArmies()-1;
+budget.end(PhaseBudget.MOVE_IN);
+return result;
 }
 
 public void fortifyPhase()
@@ -163,10 +303,25 @@ public void fortifyPhase()
 	// Cycle through all the countries and find countries that we could move from:
 	// if country has no surrounding enemies, move armies toward country with most strategic value
 	// otherwise check recklessness to decide how to move armies
+	budget.begin(PhaseBudget.FORTIFY);
+	cache.sync();
+	continentStats.sync();
+	snapshot.refresh();
 	CountryIterator armies = new ArmiesIterator( ID, 2, countries );
 	
 	while(armies.hasNext())
 	{
+		// Past the fortify budget the armies left are moved towards the cluster borders, one walk per cluster,
+		// and past twice the budget they stay where they are
+		int tier=budget.tier(PhaseBudget.FORTIFY);
+		if(tier!=PhaseBudget.FULL)
+		{
+			if(tier==PhaseBudget.REDUCED)
+			{
+				fortifyEveryCluster();
+			}
+			break;
+		}
 		Country us=armies.next();
 		int[] adjoiningCountries = us.getFriendlyAdjoiningCodeList();
 		Country fortifyTarget=null;
@@ -201,8 +356,13 @@ public void fortifyPhase()
 		if(fortifyTarget!=null)
 		{
 			board.fortifyArmies(us.getMoveableArmies(), us, fortifyTarget);
+			cache.countryChanged(us);
+			cache.countryChanged(fortifyTarget);
+			continentStats.countryChanged(us);
+			continentStats.countryChanged(fortifyTarget);
 		}
 	}
+	budget.end(PhaseBudget.FORTIFY);
 }
 
 
@@ -212,17 +372,9 @@ public void fortifyPhase()
 	
 	private float howDivided(Country country, float[] weights) 
 	{
-		int[] hostileCountries=country.getHostileAdjoiningCodeList();
-		List <Integer> IDList = new ArrayList <Integer>();
-		for(int i=0; i<hostileCountries.length; i++)
-		{
-			int countryID=countries[hostileCountries[i]].getOwner();
-			if(!IDList.contains(countryID))
-			{
-				IDList.add(countryID);
-			}			
-		}
-		return IDList.size()*weights[2];
+		// the number of different players that own the hostile countries next to <country>
+		float result=cache.getNumberOfHostileNeighborOwners(country.getCode())*weights[2];
+		return result;
 	
 	}
 	
@@ -230,12 +382,18 @@ public void fortifyPhase()
 	/**
 	 * This method weights the number of troops according to their distance, with closer troops being more relevant.
 	 * 
+	 * The distance is the length of the shortest route between the countries in borders crossed, read from the
+	 * precomputed distance matrix. It used to be the length of the cheapest route by army cost, which can be longer.
+	 * 
 	 * @param numberOfTroops
-	 * @return The weighted number of troops
+	 * @return The weighted number of troops, or 0 if destCountry cannot be reached
 	 */
 	public float calculateWeightedTroopValue(Country srcCountry, Country destCountry, float weights[]) {
 		float result = 0;
-		int distance = BoardHelper.easyCostBetweenCountries(srcCountry,destCountry, countries).length;
+		int distance = distances.routeLength(srcCountry.getCode(), destCountry.getCode());
+		if (distance == BoardDistances.UNREACHABLE) {
+			return result;
+		}
 		result = weights[3] * destCountry.getArmies()/(float) distance;
 		return result;
 	}
@@ -248,12 +406,29 @@ public void fortifyPhase()
 	 * @return The strategic value of the country as a float between 0.0 and 1.0
 	 */
 	public float calculateStrategicValue(Country country, float[] weights) {
+		long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 		float result = 0;
-		float advantage = calculateAdvantage(ID, weights);
-		result = (calculateRecklessness(advantage)*calculateImportance(country, weights))/(calculateVulnerability(country, weights)/calculateRecklessness(advantage));
+		float currentRecklessness = currentRecklessness(weights);
+		result = (currentRecklessness*calculateImportance(country, weights))/(calculateVulnerability(country, weights)/currentRecklessness);
+		profiler.record(AgentProfiler.STRATEGIC_VALUE, started, allocated);
 		return result;
 	}
 	
+	/**
+	 * Advantage and recklessness only depend on the board, not on the country being scored,
+	 * so they are computed once per board change and cached.
+	 * 
+	 * @return The recklessness value for the current board
+	 */
+	private float currentRecklessness(float[] weights) {
+		EvaluationCache.Slot slot = cache.slot(weights);
+		if (!slot.hasRecklessness()) {
+			float advantage = calculateAdvantage(ID, weights);
+			slot.setRecklessness(calculateRecklessness(advantage));
+		}
+		return slot.getRecklessness();
+	}
+	
 	/**
 	 * This method calculates the vulnerability of a country.
 	 * 
@@ -261,26 +436,22 @@ public void fortifyPhase()
 	 * @return The vulnerability of the country as a float between 0.0 and 1.0
 	 */
 	public float calculateVulnerability(Country country, float[] weights) {
+		long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 		float result = 0;
-		int enemyTroops = 0;
-		int friendlyTroops = 0;
-		for (int i=0; i<numContinents; i++) {
-			ContinentIterator itr = new ContinentIterator(i, countries);
-			while (itr.hasNext()) {
-				Country otherCountry = itr.next();
-				if (otherCountry.getOwner() != ID) { // if the country is owned by an enemy
-					enemyTroops += calculateWeightedTroopValue(country, otherCountry, weights);
-				}
-				else
-				{
-					friendlyTroops += calculateWeightedTroopValue(country, otherCountry,weights);
-				}
-			}
-			enemyTroops += BoardHelper.getEnemyArmiesInContinent(ID, i, countries);
+		EvaluationCache.Slot slot = cache.slot(weights);
+		int code = country.getCode();
+		// the weighted sums of every country are computed together the first time one is needed,
+		// and kept up to date by the cache after that
+		if (!slot.hasTroops()) {
+			slot.fillTroops();
 		}
+		// every enemy army on the board is also counted once at full strength
+		float enemyTroops = slot.getEnemyTroops(code) + cache.getEnemyArmies();
+		float friendlyTroops = slot.getFriendlyTroops(code);
 		
 		float divided = howDivided(country,weights);
 		result = (enemyTroops/divided) - friendlyTroops;
+		profiler.record(AgentProfiler.VULNERABILITY, started, allocated);
 		return result;
 	}
 	
@@ -291,12 +462,14 @@ public void fortifyPhase()
 	 * @return The threat of the player as a float between 0.0 and 1.0
 	 */
 	public float calculateThreat(int player, float[] weights) {
+		long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 		float result = 0;
 		// threat = (G*troop_income + H*card_count)/J*distance
 		// "distance" is a little abstract, since we're talking about the enemy as a whole
 		int income = board.getPlayerIncome(player);
 		int cards = board.getPlayerCards(player);
 		result = weights[7]*income + weights[8]*cards;
+		profiler.record(AgentProfiler.THREAT, started, allocated);
 		return result;
 	}
 	
@@ -315,56 +488,23 @@ public void fortifyPhase()
 	}
 	private float calculateImportance(Country country, float[] weights) 
 	{
-		
-		int countryOwner=country.getOwner();
 		int continentCode=country.getContinent();
-		CountryIterator continent = new ContinentIterator(continentCode, countries);
-		int countryCount=0;
-		int ownedCount=0;
-		while(continent.hasNext())
-		{
-			Country countryInContinent=continent.next();
-			countryCount++;
-			if(countryInContinent.getOwner()==countryOwner)
-			{
-				ownedCount++;
-			}
-		}
-		float percentageOfContinent=1/countryCount;
-		float percentageOwned=ownedCount/countryCount;
+		int countryCount=continentStats.getContinentSize(continentCode);
+		int ownedCount=continentStats.getCountriesInContinent(country.getOwner(), continentCode);
+		float percentageOfContinent=1f/countryCount;
+		float percentageOwned=(float)ownedCount/countryCount;
 		float result= weights[0] * percentageOfContinent + weights[1] * percentageOwned;
 		return result;
 	}
-	private int[] getContinents(int playerID)
-	{
-		List <Integer> continentCodes= new ArrayList <Integer>();
-		int[] result = new int[BoardHelper.numberOfContinents(countries)];
-		CountryIterator playerCountries = new PlayerIterator(playerID, countries);
-		int i=0;
-		while(playerCountries.hasNext())
-		{
-			Country us = playerCountries.next();
-			int continentCode=us.getContinent();
-			if(!continentCodes.contains(continentCode))
-			{
-				continentCodes.add(continentCode);
-				result[i]=continentCode;
-				i++;
-			}
-		}
-		return result;
-	}
 	private float calculateStability(int playerID, float[] weights) 
 	{
-		int continent;
-		int[] continents = getContinents(playerID);
+		long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 		float greatestVulnerability=-100000;
 		float continentsHeld=0;
-		for(int i=0; i<continents.length; i++)
+		for(int continent=0; continent<numContinents; continent++)
 		{
-			continent=continents[i];
 			//if player owns this continent
-			if(BoardHelper.playerOwnsContinent(playerID, continent, countries))
+			if(continentStats.playerOwnsContinent(playerID, continent))
 			{
 				continentsHeld++;
 				//check boarders of this continent
@@ -381,50 +521,46 @@ public void fortifyPhase()
 				
 			}
 		}
-		int armiesCount=BoardHelper.getPlayerArmies(playerID, countries);
+		int armiesCount=continentStats.getPlayerArmies(playerID);
 		float result=(weights[4]*continentsHeld + weights[5]*armiesCount)/(weights[6]*greatestVulnerability);
+		profiler.record(AgentProfiler.STABILITY, started, allocated);
 		return result;
 	}
 	
 	private float calculateAdvantage(int playerID, float[] weights) 
 	{
+		long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
+		EvaluationCache.Slot slot = cache.slot(weights);
+		if(playerID==ID && slot.hasAdvantage())
+		{
+			profiler.record(AgentProfiler.ADVANTAGE, started, allocated);
+			return slot.getAdvantage();
+		}
 		float stability=calculateStability(playerID, weights);
-		int[] enemyPlayers=getEnemyPlayerIDs(playerID);
 		float totalThreat=0;
-		for(int i=0; i<enemyPlayers.length; i++)
+		for(long enemyPlayers=getEnemyPlayers(playerID); enemyPlayers!=0; enemyPlayers&=enemyPlayers-1)
 		{
-			totalThreat+=calculateThreat(enemyPlayers[i], weights);
+			totalThreat+=calculateThreat(Long.numberOfTrailingZeros(enemyPlayers), weights);
 		}
 		float result=weights[9]*stability-weights[10]*totalThreat;
-		return result;
-	}
-	private int[] getEnemyPlayerIDs(int playerID)
-	{
-		
-		int remainingPlayers=board.getNumberOfPlayersLeft()-1;
-		int[] result=new int[remainingPlayers];
-		List <Integer> enemyIDs= new ArrayList <Integer>();
-		int i=0;
-		int j=0;
-		while(i<remainingPlayers)
+		if(playerID==ID)
 		{
-			int currentID=countries[j].getOwner();
-			Integer ID=new Integer(currentID);
-			if(currentID!=playerID && enemyIDs.contains(ID))
-			{
-				result[i]=currentID;
-				enemyIDs.add(ID);
-				i++;
-			}
-			j++;
+			slot.setAdvantage(result);
 		}
-		
+		profiler.record(AgentProfiler.ADVANTAGE, started, allocated);
 		return result;
 	}
+	// A bitmask of the players other than <playerID> that still own a country: bit p is set for player p
+	private long getEnemyPlayers(int playerID)
+	{
+		return cache.getLivePlayers() & ~(1L<<playerID);
+	}
 	
 	
+	// An attack is plausible if fighting it to the end takes the target at least PLAUSIBLE_ATTACK_ODDS of the time.
+	// We attack one roll at a time, so this is checked again as the battle goes on
 	private boolean plausibleAttack(Country attacker, Country target) {
-		return true;
+		return odds.getWinProbability(attacker.getArmies(), target.getArmies()) >= PLAUSIBLE_ATTACK_ODDS;
 	}
 
 	private boolean evaluateAttackPhase(int countriesConquered) {
@@ -452,6 +588,8 @@ public void fortifyPhase()
 		String answer = "The machines are learning";
 		float gameResult = winFitnessFunction();
 		adjustRules(gameResult);
+		logProfile();
+		closeLog();
 		return answer;
 	}
 
@@ -461,6 +599,8 @@ public void fortifyPhase()
 		{
 			float gameResult = lossFitnessFunction();
 			adjustRules(gameResult);
+			logProfile();
+			closeLog();
 		}
 	return null;
 	}
@@ -476,193 +616,102 @@ public void fortifyPhase()
 	}
 	
 	public void getWeightValues() {
-		// get the array of deploy rules
-		 makeLogEntry("getWeightValues called\n");
-		char[] raw = {};
-		FileReader reader;
-		try {
-			reader = new FileReader(rulesPath);
-			try {
-				reader.read(raw);
-				reader.close();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-			}
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-		}
-		makeLogEntry("file found and read\n");
-		String[] threeArrays = raw.toString().split("\n---\n");
-		makeLogEntry("split into 3 arrays\n");
-		String deployString = threeArrays[0];
-		String[] deployRulesStrings = deployString.toString().split("\n");
-		makeLogEntry("deploy rules string set\n");
-		deployRules = new Rule[deployRulesStrings.length];
-		for (int i=0; i < deployRulesStrings.length; i++) {
-			makeLogEntry("deploy rule: \n");
-			deployRules[i] = new Rule(deployRulesStrings[i]);
-			
-		}
-		makeLogEntry("deploy rules created\n");
-		// sort in ascending rank (1,2,...,n) i.e., better rules first
-		RuleComparator<Rule> c = new RuleComparator<Rule>();
-		Arrays.sort(deployRules, c);
-		// for A-L, find the first rule that mentions that letter
-		for (int i = 0; i < lettersArray.length; i++) {
-			Rule deployRule;
-			int j = 0;
-			do {
-				deployRule = deployRules[j];
-				if (j < deployRules.length - 1) { // iterate if not at the end
-					j++;
-				} else { // otherwise start over
-					j = 0;
-				}
-			// stop iterating with probability P = (1 - explorationThreshold) if a matching rule is found
-			} while (deployRule.getName().equals(lettersArray[i]) == false || rand.nextFloat() < explorationThreshold);
-		// assign that rule's weight to the corresponding letter's index (A=0,B=1,...,L=12)
-			deployWeights[i] = deployRule.getWeight();
-		}
-		makeLogEntry("deploy weights set\n");
-		// get the array of attack rules, sorted in ascending rank (1,2,...,n)
-		String attackString = threeArrays[1];
-		String[] attackRulesStrings = attackString.toString().split("\n");
-		attackRules = new Rule[attackRulesStrings.length];
-		for (int i=1; i < attackRulesStrings.length; i++) {
-			attackRules[i] = new Rule(attackRulesStrings[i]);
+		if (LearnerLog.DEBUG_ENABLED) log().debug("getWeightValues called\n");
+		// the rules file is parsed once and shared by every Learner; it is only read again when it changes on disk
+		RuleSet ruleSet = RuleSet.load(rulesPath);
+		deployRules = ruleSet.getTable(RuleSet.DEPLOY);
+		attackRules = ruleSet.getTable(RuleSet.ATTACK);
+		fortifyRules = ruleSet.getTable(RuleSet.FORTIFY);
+		if (deployWeights == null) {
+			deployWeights = new float[lettersArray.length];
+			attackWeights = new float[lettersArray.length];
+			fortifyWeights = new float[lettersArray.length];
 		}
-		Arrays.sort(attackRules, c);
-		makeLogEntry("attack rules created\n");
-		// for A-L, find the first rule that mentions that letter
+		pickWeights(deployRules, deployWeights);
+		if (LearnerLog.DEBUG_ENABLED) log().debug("deploy weights set\n");
+		pickWeights(attackRules, attackWeights);
+		if (LearnerLog.DEBUG_ENABLED) log().debug("attack weights set\n");
+		pickWeights(fortifyRules, fortifyWeights);
+		if (LearnerLog.DEBUG_ENABLED) log().debug("GetWeights finished\n");
+	}
+	
+	/**
+	 * For each letter A-M, pick a weight from the rules. Better ranked rules are more likely to be picked.
+	 * 
+	 * @param rules The rules of one phase
+	 * @param weights Filled with the chosen weight for each letter's index (A=0,B=1,...,M=12)
+	 */
+	private void pickWeights(RuleTable rules, float[] weights) {
 		for (int i = 0; i < lettersArray.length; i++) {
-			Rule attackRule;
-			int j = 0;
-			do {
-				attackRule = attackRules[j];
-				if (j < attackRules.length - 1) { // iterate if not at the end
-					j++;
-				} else { // otherwise start over
-					j = 0;
-				}
-			// stop iterating with probability P = (1 - explorationThreshold) if a matching rule is found
-			} while (attackRule.getName().equals(lettersArray[i]) == false || rand.nextFloat() < explorationThreshold);
-		// assign that rule's weight to the corresponding letter's index (A=0,B=1,...,L=12)
-			attackWeights[i] = attackRule.getWeight();
-		}
-		makeLogEntry("attack weights set\n");
-
-		// get the array of fortify rules, sorted in ascending rank (1,2,...,n)
-		String fortifyString = threeArrays[2];
-		String[] fortifyRulesStrings = fortifyString.toString().split("\n");
-		fortifyRules = new Rule[fortifyRulesStrings.length];
-		for (int i=1; i < fortifyRulesStrings.length; i++) {
-			fortifyRules[i] = new Rule(fortifyRulesStrings[i]);
+			int rule = rules.pickRule(i, rand, explorationThreshold);
+			// a letter with no rules gets a neutral weight
+			weights[i] = rule == -1 ? DEFAULT_WEIGHT : rules.getWeight(rule);
 		}
-		// for A-L, find the first rule that mentions that letter
-		for (int i = 0; i < lettersArray.length; i++) {
-			Rule fortifyRule;
-			int j = 0;
-			do {
-				fortifyRule = fortifyRules[j];
-				if (j < fortifyRules.length - 1) { // iterate if not at the end
-					j++;
-				} else { // otherwise start over
-					j = 0;
-				}
-			// stop iterating with probability P = (1 - explorationThreshold) if a matching rule is found
-			} while (fortifyRule.getName().equals(lettersArray[i]) == false || rand.nextFloat() < explorationThreshold);
-		// assign that rule's weight to the corresponding letter's index (A=0,B=1,...,L=12)
-			fortifyWeights[i] = fortifyRule.getWeight();
-		}
-		makeLogEntry("GetWeights finished\n");
 	}
 	
 	public void adjustRules(float adjustment) {
-		String newRules = "";
-		// change each deploy weight's rank by amount adjustment - determined by the fitness function and passed in
-		for (int i=0; i < deployWeights.length; i++) {
-			String name = lettersArray[i];
-			Float weight = new Float(deployWeights[i]);
-			for (Rule rule : deployRules) {
-				if (rule.getName().equals(name) && rule.getWeight() == weight.floatValue()) {
-					int currentRank = rule.getRank();
-					currentRank = currentRank + (int) adjustment;
-					rule.SetRank(currentRank);
-				}
-			}
-		}
-		// change each attack weight's rank by amount gameResult - determined by the fitness function and passed in
-		for (int i=0; i < attackWeights.length; i++) {
-			String name = lettersArray[i];
-			Float weight = new Float(attackWeights[i]);
-			for (Rule rule : attackRules) {
-				if (rule.getName().equals(name) && rule.getWeight() == weight.floatValue()) {
-					int currentRank = rule.getRank();
-					currentRank = currentRank + (int)adjustment;
-					rule.SetRank(currentRank);
-				}
-			}
-		}
-		// change each fortify weight's rank by amount gameResult - determined by the fitness function and passed in
-		for (int i=0; i < fortifyWeights.length; i++) {
-			String name = lettersArray[i];
-			Float weight = new Float(fortifyWeights[i]);
-			for (Rule rule : fortifyRules) {
-				if (rule.getName().equals(name) && rule.getWeight() == weight.floatValue()) {
-					int currentRank = rule.getRank();
-					currentRank = currentRank + (int)adjustment;
-					rule.SetRank(currentRank);
-				}
-			}
+		if (deployWeights == null) {
+			return; // the game ended before we picked any weights
 		}
-		// convert the rules to string format
-		
-		for (int i=0; i < deployRules.length; i++) {
-			newRules = newRules + "\n" + deployRules[i].toString();
-			newRules = newRules + "\n" + attackRules[i].toString();
-			newRules = newRules + "\n" + fortifyRules[i].toString();
-		}
-		
-		// write the changes to disk for persistence, overwriting the old values
-		File rulesFile = new File(rulesPath);
-		
-		FileWriter writer;
+		// the loaded rules are shared with every other Learner, so the ranks are changed in a copy of the latest saved rules
+		// and written to the binary rule store for persistence, replacing the old values atomically.
+		// The amount of the adjustment is determined by the fitness function and passed in
+		float[][] playedWeights = {deployWeights, attackWeights, fortifyWeights};
 		try {
-			writer = new FileWriter(rulesFile, false);
-			writer.write("");
-			writer.close();
+			RuleSet.adjustRanks(rulesPath, playedWeights, (int) adjustment);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
-		}	
+		}
 	}
 	
 	public void setup() {
 		rand = new Random();
+		cache.sync();
+		continentStats.sync();
+		snapshot.refresh();
 		getWeightValues();
 	}
 	
 	public void makeLogEntry(String message) {
-		FileWriter writer;
-		try {
-			// write to the file
+		log().info(message);
+	}
+	
+	// with -Driskai.profile=true, log where this game's turn time went,
+	// and log how often each phase ran over its budget if any did
+	private void logProfile() {
+		if (AgentProfiler.ENABLED) {
+			log().info("profile of " + name() + " " + ID + ":\n" + profiler.summary());
+			profiler.reset();
+		}
+		if (budget.hasFallenBack()) {
+			log().info("phase budgets of " + name() + " " + ID + ":\n" + budget.summary());
+		}
+		budget.reset();
+	}
+	
+	// The log file is named after the time it was created. It stays open and is written in the background.
+	private LearnerLog log() {
+		if (log == null) {
 			if (fileName == null) {
 				Date date = new Date();
 				fileName = date.toString();
 				fileName = fileName.replace(' ', '-');
 				fileName = fileName.replace(":", "");
-				File file = new File(Board.getAgentPath() + File.separator + name() + "Logs" + File.separator + fileName + ".txt");
-				file.getParentFile().mkdirs();
-				writer = new FileWriter(file, false);
-			} else {
-				writer = new FileWriter(Board.getAgentPath() + File.separator + name() + "Logs" + File.separator + fileName + ".txt", true);
+				// several Learners can start in the same second, so each player gets its own file
+				fileName = fileName + "-" + ID;
 			}
-			writer.write(message);
-			writer.close(); // flush and close
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			log = new LearnerLog(new File(Board.getAgentPath() + File.separator + name() + "Logs" + File.separator + fileName + ".txt"));
 		}
-	} 
+		return log;
+	}
+	
+	// Write out everything logged during the game
+	private void closeLog() {
+		if (log != null) {
+			log.close();
+			log = null;
+			fileName = null;
+		}
+	}
 	
 }
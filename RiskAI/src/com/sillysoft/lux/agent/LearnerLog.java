@@ -0,0 +1,221 @@
+package com.sillysoft.lux.agent;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A log file that is kept open and written to by a background thread.
+ *
+ * Entries from every log in the JVM go into one bounded queue, which a single daemon thread drains into
+ * buffered writers. Adding an entry never blocks: if the queue is full the entry is dropped, as the game must not
+ * wait for its log. flush() and close() wait until everything logged so far is on disk; Learner closes its log when
+ * a game ends, and all logs are closed when the JVM exits.
+ *
+ * A log that cannot be written, for an I/O error or because the sandbox Lux runs agents in forbids it, stops writing
+ * and the writer thread carries on with the other logs.
+ *
+ * Entries below LEVEL are not written. LEVEL is a compile-time constant, so a hot-path entry written as
+ *   if (LearnerLog.DEBUG_ENABLED) log.debug(...);
+ * is removed by the compiler when debug logging is off.
+ */
+public class LearnerLog {
+
+	public static final int DEBUG = 0;
+	public static final int INFO = 1;
+	public static final int ERROR = 2;
+
+	/** The lowest level that is written. */
+	public static final int LEVEL = INFO;
+	public static final boolean DEBUG_ENABLED = LEVEL <= DEBUG;
+
+	private static final int CAPACITY = 4096;
+	private static final long FLUSH_TIMEOUT_MS = 5000;
+
+	private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<Entry>(CAPACITY);
+	private static final List<LearnerLog> open = new ArrayList<LearnerLog>();
+
+	static {
+		Thread drainer = new Thread("LearnerLog writer") {
+			public void run() {
+				drain();
+			}
+		};
+		drainer.setDaemon(true);
+		drainer.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread("LearnerLog shutdown") {
+			public void run() {
+				closeAll();
+			}
+		});
+	}
+
+	// a message for a log, or a marker asking for the log to be flushed (and maybe closed). A marker with no log just waits for the queue to empty.
+	private static class Entry {
+		final LearnerLog log;
+		final String text;
+		final boolean close;
+		final CountDownLatch done;
+
+		Entry(LearnerLog log, String text, boolean close, CountDownLatch done) {
+			this.log = log;
+			this.text = text;
+			this.close = close;
+			this.done = done;
+		}
+	}
+
+	private final File file;
+	// only touched by the writer thread
+	private Writer writer;
+	private boolean started;
+	private boolean failed;
+
+	/** A log that writes to <file>, replacing any old contents. The file is created when the first entry is written. */
+	public LearnerLog(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void debug(String message) {
+		if (DEBUG_ENABLED) {
+			add(new Entry(this, message, false, null));
+		}
+	}
+
+	public void info(String message) {
+		if (LEVEL <= INFO) {
+			add(new Entry(this, message, false, null));
+		}
+	}
+
+	public void error(String message) {
+		add(new Entry(this, message, false, null));
+	}
+
+	/** Wait until every entry logged so far has been written to the file. */
+	public void flush() {
+		waitFor(false);
+	}
+
+	/** Flush and close the file. Entries logged after this reopen it and are appended. */
+	public void close() {
+		waitFor(true);
+	}
+
+	private void waitFor(boolean close) {
+		CountDownLatch done = new CountDownLatch(1);
+		if (!add(new Entry(this, null, close, done))) {
+			return;
+		}
+		try {
+			done.await(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Returns false if the queue was full and the entry was dropped
+	private static boolean add(Entry entry) {
+		return queue.offer(entry);
+	}
+
+	private static void drain() {
+		while (true) {
+			Entry entry;
+			try {
+				entry = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			// the writers are buffered, so files are only written when a buffer fills or a flush is asked for
+			try {
+				if (entry.done == null) {
+					entry.log.write(entry.text);
+				} else if (entry.log != null) {
+					entry.log.flushWriter(entry.close);
+				}
+			} catch (RuntimeException e) {
+				// such as a SecurityException from the agent sandbox: give up on this log, not on the others
+				if (entry.log != null) {
+					entry.log.failed = true;
+				}
+				e.printStackTrace();
+			} finally {
+				if (entry.done != null) {
+					entry.done.countDown();
+				}
+			}
+		}
+	}
+
+	private void write(String text) {
+		if (failed) {
+			return;
+		}
+		try {
+			if (writer == null) {
+				file.getParentFile().mkdirs();
+				writer = new BufferedWriter(new FileWriter(file, started));
+				started = true;
+				synchronized (open) {
+					open.add(this);
+				}
+			}
+			writer.write(text);
+		} catch (IOException e) {
+			failed = true;
+			e.printStackTrace();
+		}
+	}
+
+	private void flushWriter(boolean close) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+			if (close) {
+				writer.close();
+				writer = null;
+				synchronized (open) {
+					open.remove(this);
+				}
+			}
+		} catch (IOException e) {
+			failed = true;
+			e.printStackTrace();
+		}
+	}
+
+	private static void closeAll() {
+		// let the writer catch up first, so that files opened by waiting entries get closed too
+		CountDownLatch done = new CountDownLatch(1);
+		if (add(new Entry(null, null, false, done))) {
+			try {
+				done.await(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		List<LearnerLog> logs;
+		synchronized (open) {
+			logs = new ArrayList<LearnerLog>(open);
+		}
+		for (int i = 0; i < logs.size(); i++) {
+			logs.get(i).close();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.sillysoft.lux.agent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs per-country scoring loops across the common ForkJoinPool on large boards.
+ *
+ * A loop is handed over as a task that scores a range of indices. On boards with fewer countries than the threshold,
+ * or when the pool has a single thread, the whole range runs on the calling thread, as a plain loop would. Otherwise
+ * the range is split into chunks that run on the pool while the caller waits. Every index is scored by the same code
+ * either way and writes only its own result, so the results are exactly the same as a serial loop's.
+ *
+ * The tasks must only read shared state: fill any memo they need before the loop starts. The board does not change
+ * while the loop runs, since the agent thread is waiting on it.
+ *
+ * The threshold is DEFAULT_THRESHOLD countries, unless the JVM is started with -Driskai.parallelThreshold=<count>.
+ */
+public class ParallelScoring {
+
+	/** The number of countries from which loops are split across threads. */
+	public static final int DEFAULT_THRESHOLD = 300;
+	private static final int THRESHOLD = Integer.getInteger("riskai.parallelThreshold", DEFAULT_THRESHOLD);
+
+	// the fewest indices one chunk handles, as a smaller chunk costs more to hand out than it saves
+	private static final int MIN_CHUNK = 16;
+
+	/** A loop body that handles the indices from <from> up to (not including) <to>. */
+	public interface RangeTask {
+		void run(int from, int to);
+	}
+
+	/** A score for one index. */
+	public interface Score {
+		float score(int index);
+	}
+
+	private final boolean parallel;
+
+	/** Split loops when the board has at least the configured threshold of countries. */
+	public ParallelScoring(int numCountries) {
+		this(numCountries, THRESHOLD);
+	}
+
+	public ParallelScoring(int numCountries, int threshold) {
+		parallel = numCountries >= threshold && ForkJoinPool.getCommonPoolParallelism() > 1;
+	}
+
+	/** Are loops split across threads? */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/** Run <task> over the indices 0 up to <count>, and return when every index is done. */
+	public void forRange(int count, RangeTask task) {
+		if (!parallel || count < 2 * MIN_CHUNK) {
+			task.run(0, count);
+			return;
+		}
+		// a few chunks per thread, so a thread that finishes early can take work from the others
+		int grain = Math.max(MIN_CHUNK, count / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		ForkJoinPool.commonPool().invoke(new Chunk(task, 0, count, grain));
+	}
+
+	/** Set scores[i] to the score of index i, for i from 0 up to <count>. */
+	public void scoreAll(int count, final float[] scores, final Score score) {
+		forRange(count, new RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					scores[i] = score.score(i);
+				}
+			}
+		});
+	}
+
+	// ForkJoinTask is Serializable, but a chunk only lives for one forRange() call and is never serialized
+	@SuppressWarnings("serial")
+	private static class Chunk extends RecursiveAction {
+		private final RangeTask task;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		Chunk(RangeTask task, int from, int to, int grain) {
+			this.task = task;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (to - from <= grain) {
+				task.run(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Chunk(task, from, middle, grain), new Chunk(task, middle, to, grain));
+		}
+	}
+}
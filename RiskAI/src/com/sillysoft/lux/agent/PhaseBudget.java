@@ -0,0 +1,133 @@
+package com.sillysoft.lux.agent;
+
+/**
+ * Time budgets for the phases of a turn, and a count of how often each phase had to fall back to a cheaper
+ * way of finishing.
+ *
+ * The agent calls begin(phase) when a phase starts and end(phase) when it is done. In between, its loops ask tier(phase):
+ *   FULL     while the phase is within its budget: play as well as we can;
+ *   REDUCED  once the budget is spent: finish the phase with a cheaper heuristic;
+ *   MINIMAL  once twice the budget is spent: stop, doing only what the rules require.
+ * tier() reads System.nanoTime(), which costs far less than any loop body it guards. Each phase has its own clock,
+ * so moveArmiesIn() can be timed inside the attack phase. A phase that was never begun is always FULL. Helpers that
+ * can be called inside or outside their phase use beginIfIdle(), so they are timed either way.
+ *
+ * Budgets are in milliseconds, set with -Driskai.placeMillis, -Driskai.attackMillis, -Driskai.fortifyMillis and
+ * -Driskai.moveInMillis, or DEFAULT_MILLIS. end() counts the cheapest tier the phase was told to use.
+ *
+ * A budgeted agent's moves depend on how fast the machine happens to be, so nothing that must be repeatable plays one:
+ * the simulator trains with SimLearner, which has no budget.
+ */
+public class PhaseBudget {
+
+	public static final int PLACE = 0;
+	public static final int ATTACK = 1;
+	public static final int FORTIFY = 2;
+	public static final int MOVE_IN = 3;
+
+	public static final int FULL = 0;
+	public static final int REDUCED = 1;
+	public static final int MINIMAL = 2;
+
+	/** The budget of each phase when no property is given, in milliseconds. */
+	public static final long[] DEFAULT_MILLIS = {500, 2000, 500, 50};
+
+	private static final String[] PHASES = {"placeArmies", "attackPhase", "fortifyPhase", "moveArmiesIn"};
+	private static final String[] PROPERTIES = {"riskai.placeMillis", "riskai.attackMillis", "riskai.fortifyMillis", "riskai.moveInMillis"};
+	private static final String[] TIERS = {"full", "reduced", "minimal"};
+
+	private final long[] budget = new long[PHASES.length];
+	private final long[] started = new long[PHASES.length];
+	private final boolean[] running = new boolean[PHASES.length];
+	// the cheapest tier each running phase has been told to use
+	private final int[] reached = new int[PHASES.length];
+	private final long[][] counts = new long[PHASES.length][TIERS.length];
+
+	public PhaseBudget() {
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			budget[phase] = Long.getLong(PROPERTIES[phase], DEFAULT_MILLIS[phase]) * 1000000L;
+		}
+	}
+
+	/** Start the clock of <phase>. */
+	public void begin(int phase) {
+		started[phase] = System.nanoTime();
+		running[phase] = true;
+		reached[phase] = FULL;
+	}
+
+	/**
+	 * Start the clock of <phase> if it is not running yet.
+	 * @return True if this call started it, in which case the caller should end() it
+	 */
+	public boolean beginIfIdle(int phase) {
+		if (running[phase]) {
+			return false;
+		}
+		begin(phase);
+		return true;
+	}
+
+	/** How <phase> should go on: FULL, REDUCED or MINIMAL. */
+	public int tier(int phase) {
+		if (!running[phase]) {
+			return FULL;
+		}
+		long elapsed = System.nanoTime() - started[phase];
+		int tier = elapsed < budget[phase] ? FULL : elapsed < 2 * budget[phase] ? REDUCED : MINIMAL;
+		if (tier > reached[phase]) {
+			reached[phase] = tier;
+		}
+		return tier;
+	}
+
+	/** Stop the clock of <phase>, and count the cheapest tier it used. */
+	public void end(int phase) {
+		if (running[phase]) {
+			counts[phase][reached[phase]]++;
+			running[phase] = false;
+		}
+	}
+
+	/** The number of times <phase> ended with <tier> as its cheapest tier. */
+	public long getCount(int phase, int tier) {
+		return counts[phase][tier];
+	}
+
+	/** Has any phase had to use a tier below FULL? */
+	public boolean hasFallenBack() {
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			if (counts[phase][REDUCED] > 0 || counts[phase][MINIMAL] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Zero the counts, for the next game. */
+	public void reset() {
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			for (int tier = 0; tier < TIERS.length; tier++) {
+				counts[phase][tier] = 0;
+			}
+		}
+	}
+
+	/** A table of how many times each phase ended at each tier. */
+	public String summary() {
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%-14s %10s", "phase", "budget ms"));
+		for (int tier = 0; tier < TIERS.length; tier++) {
+			result.append(String.format(" %10s", TIERS[tier]));
+		}
+		result.append(String.format("%n"));
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			result.append(String.format("%-14s %10d", PHASES[phase], budget[phase] / 1000000L));
+			for (int tier = 0; tier < TIERS.length; tier++) {
+				result.append(String.format(" %10d", counts[phase][tier]));
+			}
+			result.append(String.format("%n"));
+		}
+		return result.toString();
+	}
+}
@@ -1,28 +1,62 @@
 package com.sillysoft.lux.agent;
 
+/**
+ * One rule: a weight for one of the lettered weights (A, B, C, ...) and the rank that learning has given it.
+ * Rules are stored in bulk in a RuleTable; this class is a small value view of one entry, kept for the
+ * "A_0.5_3" text format and for code that works with single rules.
+ */
 public class Rule {
 	
-	private String name;
-	private Float weight;
-	private Integer rank;
+	private static final String[] NAMES = {"A","B","C","D","E","F","G","H","I","J","K","L","M",
+		"N","O","P","Q","R","S","T","U","V","W","X","Y","Z"};
+	
+	private byte letter;
+	private float weight;
+	private int rank;
 	
 	public Rule(String input) {
 		String[] values = input.split("_");
-		name = values[0];
+		letter = (byte) letterIndex(values[0]);
 		weight = Float.parseFloat(values[1]);
 		rank = Integer.parseInt(values[2]);
 	}
 	
+	public Rule(String name, float weight, int rank) {
+		this(letterIndex(name), weight, rank);
+	}
+	
+	public Rule(int letter, float weight, int rank) {
+		this.letter = (byte) letter;
+		this.weight = weight;
+		this.rank = rank;
+	}
+	
+	/** The index of a rule name: A=0, B=1, ... */
+	public static int letterIndex(String name) {
+		if (name.length() != 1 || name.charAt(0) < 'A' || name.charAt(0) > 'Z') {
+			throw new IllegalArgumentException("Rule names are single letters A-Z, not " + name);
+		}
+		return name.charAt(0) - 'A';
+	}
+	
+	/** The name of the letter with the given index. */
+	public static String letterName(int letter) {
+		return NAMES[letter];
+	}
+	
 	public String getName() {
-		String result = name;
+		String result = NAMES[letter];
 		return result;
 	}
 	public int setName(String input) {
-		name = input;
+		letter = (byte) letterIndex(input);
 		return 0;
 	}
+	public int getLetter() {
+		return letter;
+	}
 	public float getWeight() {
-		float result = weight.floatValue();
+		float result = weight;
 		return result;
 	}
 	public int setWeight(float input) {
@@ -30,7 +64,7 @@ public class Rule {
 		return 0;
 	}
 	public int getRank() {
-		int result = rank.intValue();
+		int result = rank;
 		return result;
 	}
 	public int SetRank(int input) {
@@ -38,7 +72,7 @@ public class Rule {
 		return 0;
 	}
 	public String toString() {
-		String result = name.toString() + "_" + weight.toString() + "_" + rank.toString();
+		String result = getName() + "_" + weight + "_" + rank;
 		return result;
 	}
 
@@ -0,0 +1,141 @@
+package com.sillysoft.lux.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The parsed contents of a rules file, shared by every Learner in the JVM.
+ *
+ * The text file holds three sections (deploy, attack and fortify) separated by a line containing "---".
+ * Each other non-blank line is one rule in the Rule(String) format, e.g. "A_0.5_3".
+ * Learned rules are saved to the binary RuleStore next to the text file, which is used instead of the
+ * text file unless the text file has been edited since the store was written.
+ *
+ * A RuleSet is read the first time it is asked for and kept in memory.
+ * Later calls to load() only check the files' modification times, and re-read them when they have changed.
+ * The rule tables are shared and must not be modified by callers; use copyTable() to get rules that can be changed.
+ */
+public class RuleSet {
+
+	public static final int DEPLOY = 0;
+	public static final int ATTACK = 1;
+	public static final int FORTIFY = 2;
+	public static final int PHASES = 3;
+
+	public static final String SECTION_SEPARATOR = "---";
+
+	// one parsed RuleSet per rules file path
+	private static final Map<String, RuleSet> loaded = new HashMap<String, RuleSet>();
+	// held while learned ranks are merged into a store, so only one thread writes at a time
+	private static final Object writeLock = new Object();
+
+	private final String path;
+	private final long textModified;
+	private final long storeModified;
+	private final RuleTable[] tables;
+
+	/**
+	 * Get the rules for the rules text file at <path>, or from its binary store if that is newer.
+	 * The files are only read if they have not been read before or if they have changed on disk since they were read.
+	 * Missing or unreadable files give a RuleSet with no rules.
+	 */
+	public static RuleSet load(String path) {
+		File text = new File(path);
+		File store = new File(RuleStore.binaryPath(path));
+		long textModified = text.lastModified();
+		long storeModified = store.lastModified();
+		synchronized (loaded) {
+			RuleSet result = loaded.get(path);
+			if (result == null || result.textModified != textModified || result.storeModified != storeModified) {
+				RuleTable[] tables = null;
+				if (store.isFile() && storeModified >= textModified) {
+					try {
+						tables = RuleStore.read(store);
+					} catch (IOException e) {
+						// fall back to the text rules
+					}
+				}
+				if (tables == null) {
+					tables = RuleStore.importText(read(text));
+				}
+				result = new RuleSet(path, textModified, storeModified, tables);
+				loaded.put(path, result);
+			}
+			return result;
+		}
+	}
+
+	/** Forget the cached copy of <path>, so the next load() reads it again. */
+	public static void invalidate(String path) {
+		synchronized (loaded) {
+			loaded.remove(path);
+		}
+	}
+
+	/**
+	 * Change the ranks of the rules that were played with and save them to the binary store of <path>.
+	 * Updates are applied one at a time, each to the latest saved rules, so concurrent games do not lose each other's changes.
+	 * @param weights The weights played in each phase, indexed by DEPLOY, ATTACK and FORTIFY
+	 */
+	public static void adjustRanks(String path, float[][] weights, int adjustment) throws IOException {
+		synchronized (writeLock) {
+			RuleSet ruleSet = load(path);
+			RuleTable[] tables = new RuleTable[PHASES];
+			for (int phase = 0; phase < PHASES; phase++) {
+				tables[phase] = ruleSet.copyTable(phase);
+				tables[phase].adjustRanks(weights[phase], adjustment);
+			}
+			RuleStore.write(new File(RuleStore.binaryPath(path)), tables);
+			invalidate(path);
+		}
+	}
+
+	private RuleSet(String path, long textModified, long storeModified, RuleTable[] tables) {
+		this.path = path;
+		this.textModified = textModified;
+		this.storeModified = storeModified;
+		this.tables = tables;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/** The rules of one phase. The table is shared and must not be modified. */
+	public RuleTable getTable(int phase) {
+		return tables[phase];
+	}
+
+	/** A private copy of the rules of one phase. */
+	public RuleTable copyTable(int phase) {
+		return tables[phase].copy();
+	}
+
+	private static String read(File file) {
+		if (!file.isFile()) {
+			return "";
+		}
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				byte[] raw = new byte[(int) file.length()];
+				int total = 0;
+				while (total < raw.length) {
+					int count = in.read(raw, total, raw.length - total);
+					if (count < 0) {
+						break;
+					}
+					total += count;
+				}
+				return new String(raw, 0, total, "UTF-8");
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return "";
+		}
+	}
+}
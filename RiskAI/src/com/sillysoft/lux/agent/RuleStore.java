@@ -0,0 +1,192 @@
+package com.sillysoft.lux.agent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes rule tables in a compact binary form, and converts them to and from the text form of rules.txt.
+ *
+ * The binary store is laid out as:
+ *   int magic, int format version, int[PHASES] rule counts,
+ *   then for each phase in order, one fixed-width record per rule: byte letter index (A=0), float weight, int rank.
+ * All values are big-endian.
+ *
+ * A store is always written to a temporary file in the same directory which is then renamed over the old store,
+ * so a reader sees either the old rules or the new ones, never a partly written file.
+ */
+public class RuleStore {
+
+	public static final int MAGIC = 0x52554C45; // "RULE"
+	public static final int FORMAT_VERSION = 1;
+	public static final int HEADER_SIZE = 8 + 4 * RuleSet.PHASES;
+	public static final int RECORD_SIZE = 1 + 4 + 4;
+
+	/** The binary store that sits next to a rules text file: rules.txt is stored in rules.bin */
+	public static String binaryPath(String textPath) {
+		if (textPath.endsWith(".txt")) {
+			return textPath.substring(0, textPath.length() - 4) + ".bin";
+		}
+		return textPath + ".bin";
+	}
+
+	/**
+	 * Read a binary store through a memory mapping.
+	 * @return The rules of each phase
+	 * @throws IOException if the file cannot be read or is not a rule store of this version
+	 */
+	public static RuleTable[] read(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE) {
+				throw new IOException("Rule store " + file + " is too short");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(file + " is not a rule store");
+			}
+			int version = buffer.getInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Rule store " + file + " has unsupported version " + version);
+			}
+			int[] counts = new int[RuleSet.PHASES];
+			long expected = HEADER_SIZE;
+			for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+				counts[phase] = buffer.getInt();
+				if (counts[phase] < 0) {
+					throw new IOException("Rule store " + file + " is corrupt");
+				}
+				expected += (long) counts[phase] * RECORD_SIZE;
+			}
+			if (expected != size) {
+				throw new IOException("Rule store " + file + " is corrupt");
+			}
+
+			RuleTable[] result = new RuleTable[RuleSet.PHASES];
+			for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+				byte[] letter = new byte[counts[phase]];
+				float[] weight = new float[counts[phase]];
+				int[] rank = new int[counts[phase]];
+				for (int i = 0; i < counts[phase]; i++) {
+					letter[i] = buffer.get();
+					weight[i] = buffer.getFloat();
+					rank[i] = buffer.getInt();
+					if (letter[i] < 0 || letter[i] >= RuleTable.LETTERS) {
+						throw new IOException("Rule store " + file + " is corrupt");
+					}
+				}
+				result[phase] = new RuleTable(letter, weight, rank);
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Replace the binary store at <file> with <tables>.
+	 * The rules are written to a temporary file which is then atomically renamed to <file>.
+	 */
+	public static void write(File file, RuleTable[] tables) throws IOException {
+		int records = 0;
+		for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+			records += tables[phase].size();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + records * RECORD_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+			buffer.putInt(tables[phase].size());
+		}
+		for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+			RuleTable table = tables[phase];
+			for (int i = 0; i < table.size(); i++) {
+				buffer.put((byte) table.getLetter(i));
+				buffer.putFloat(table.getWeight(i));
+				buffer.putInt(table.getRank(i));
+			}
+		}
+		buffer.flip();
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		directory.mkdirs();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				FileChannel channel = out.getChannel();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete(); // only still there if the rename failed
+		}
+	}
+
+	/**
+	 * Parse rules in the text format of rules.txt: one rule per line in the Rule(String) format,
+	 * with the deploy, attack and fortify sections separated by a "---" line. Blank lines are ignored.
+	 */
+	public static RuleTable[] importText(String text) {
+		List<List<Rule>> sections = new ArrayList<List<Rule>>();
+		for (int i = 0; i < RuleSet.PHASES; i++) {
+			sections.add(new ArrayList<Rule>());
+		}
+		int phase = 0;
+		String[] lines = text.split("\r?\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.length() == 0) {
+				continue;
+			}
+			if (line.equals(RuleSet.SECTION_SEPARATOR)) {
+				phase++;
+				if (phase == RuleSet.PHASES) {
+					break;
+				}
+				continue;
+			}
+			sections.get(phase).add(new Rule(line));
+		}
+
+		RuleTable[] result = new RuleTable[RuleSet.PHASES];
+		for (int i = 0; i < RuleSet.PHASES; i++) {
+			result[i] = RuleTable.fromRules(sections.get(i).toArray(new Rule[sections.get(i).size()]));
+		}
+		return result;
+	}
+
+	/** Format rules in the text format read by importText(), best ranked rules first. */
+	public static String exportText(RuleTable[] tables) {
+		StringBuilder result = new StringBuilder();
+		for (int phase = 0; phase < RuleSet.PHASES; phase++) {
+			if (phase > 0) {
+				result.append(RuleSet.SECTION_SEPARATOR).append('\n');
+			}
+			for (int i = 0; i < tables[phase].size(); i++) {
+				result.append(tables[phase].getRule(tables[phase].getRanked(i)).toString()).append('\n');
+			}
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,184 @@
+package com.sillysoft.lux.agent;
+
+import java.util.Random;
+
+/**
+ * The rules of one phase, stored as parallel primitive arrays (letter, weight and rank per rule).
+ *
+ * The table keeps an index of its rules sorted by ascending rank (better rules first), and the same
+ * order split up by letter, so picking a rule for a letter only looks at the rules for that letter.
+ * Picking rules and adjusting ranks allocate nothing.
+ * A table that is not being changed can be read from many threads at once.
+ */
+public class RuleTable {
+
+	/** Letters are indexed A=0 ... Z=25 */
+	public static final int LETTERS = 26;
+
+	private final byte[] letter;
+	private final float[] weight;
+	private final int[] rank;
+	private final int size;
+
+	// rule indexes sorted by ascending rank, and the same order grouped by letter
+	private final int[] order;
+	private final int[] byLetter;
+	private final int[] letterOffset = new int[LETTERS + 1];
+	private final int[] letterFill = new int[LETTERS];
+	private boolean sorted;
+
+	/** Make a table that owns the given arrays, which must all have the same length. */
+	public RuleTable(byte[] letter, float[] weight, int[] rank) {
+		this.letter = letter;
+		this.weight = weight;
+		this.rank = rank;
+		size = letter.length;
+		order = new int[size];
+		byLetter = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sort();
+	}
+
+	public static RuleTable fromRules(Rule[] rules) {
+		byte[] letter = new byte[rules.length];
+		float[] weight = new float[rules.length];
+		int[] rank = new int[rules.length];
+		for (int i = 0; i < rules.length; i++) {
+			letter[i] = (byte) rules[i].getLetter();
+			weight[i] = rules[i].getWeight();
+			rank[i] = rules[i].getRank();
+		}
+		return new RuleTable(letter, weight, rank);
+	}
+
+	/** A copy of this table that can be changed without affecting this one. */
+	public RuleTable copy() {
+		return new RuleTable(letter.clone(), weight.clone(), rank.clone());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getLetter(int index) {
+		return letter[index];
+	}
+
+	public float getWeight(int index) {
+		return weight[index];
+	}
+
+	public int getRank(int index) {
+		return rank[index];
+	}
+
+	/** A Rule holding the values of one entry. */
+	public Rule getRule(int index) {
+		return new Rule(letter[index], weight[index], rank[index]);
+	}
+
+	/** The index of the rule at <position> when the rules are sorted by ascending rank. */
+	public int getRanked(int position) {
+		ensureSorted();
+		return order[position];
+	}
+
+	/** The number of rules for <letterIndex>. */
+	public int countFor(int letterIndex) {
+		ensureSorted();
+		return letterOffset[letterIndex + 1] - letterOffset[letterIndex];
+	}
+
+	/**
+	 * Pick a rule for a letter. The rules for the letter are visited best rank first, wrapping around at the end,
+	 * and each one is taken with probability (1 - explorationThreshold).
+	 * @return The index of the chosen rule, or -1 if there are no rules for the letter
+	 */
+	public int pickRule(int letterIndex, Random rand, float explorationThreshold) {
+		ensureSorted();
+		int start = letterOffset[letterIndex];
+		int count = letterOffset[letterIndex + 1] - start;
+		if (count == 0) {
+			return -1;
+		}
+		int j = 0;
+		while (rand.nextFloat() < explorationThreshold) {
+			j = (j + 1) % count;
+		}
+		return byLetter[start + j];
+	}
+
+	/**
+	 * Find the best ranked rule with the given letter and weight.
+	 * @return The index of the rule, or -1 if there is none
+	 */
+	public int find(int letterIndex, float ruleWeight) {
+		ensureSorted();
+		for (int i = letterOffset[letterIndex]; i < letterOffset[letterIndex + 1]; i++) {
+			if (weight[byLetter[i]] == ruleWeight) {
+				return byLetter[i];
+			}
+		}
+		return -1;
+	}
+
+	/** Change the rank of one rule. The sorted order is rebuilt the next time it is needed. */
+	public void adjustRank(int index, int adjustment) {
+		rank[index] += adjustment;
+		sorted = false;
+	}
+
+	/**
+	 * Change the rank of the rules that were played with: for each letter, the best ranked rule with the weight in <weights>.
+	 * @param weights The weight used for each letter, indexed A=0, B=1, ...
+	 */
+	public void adjustRanks(float[] weights, int adjustment) {
+		for (int i = 0; i < weights.length; i++) {
+			int rule = find(i, weights[i]);
+			if (rule != -1) {
+				adjustRank(rule, adjustment);
+			}
+		}
+	}
+
+	private void ensureSorted() {
+		if (!sorted) {
+			sort();
+		}
+	}
+
+	private void sort() {
+		// insertion sort keeps equal ranks in their current order, and is fast for the
+		// nearly-sorted order left behind by a few rank adjustments
+		for (int i = 1; i < size; i++) {
+			int item = order[i];
+			int j = i - 1;
+			while (j >= 0 && rank[order[j]] > rank[item]) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = item;
+		}
+
+		// group the ranked order by letter with a counting pass
+		for (int i = 0; i <= LETTERS; i++) {
+			letterOffset[i] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			letterOffset[letter[i] + 1]++;
+		}
+		for (int i = 0; i < LETTERS; i++) {
+			letterOffset[i + 1] += letterOffset[i];
+		}
+		for (int i = 0; i < LETTERS; i++) {
+			letterFill[i] = letterOffset[i];
+		}
+		for (int i = 0; i < size; i++) {
+			int index = order[i];
+			byLetter[letterFill[letter[index]]++] = index;
+		}
+		sorted = true;
+	}
+}
@@ -10,6 +10,7 @@ import java.util.Date;
 import java.util.Random;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public abstract class SmartAgentBase implements LuxAgent 
 {
@@ -33,6 +34,39 @@ protected int goalCont;
 // Since all subclasses need a random number generator (for you-won strings) we keep one. 
 protected Random rand;
 
+// Breadth first searches over the board use this visited-set and queue, sized for the board in setPrefs().
+protected ClusterWalk walk;
+
+// Our clusters and their borders, kept up to date as we conquer countries. Read it with getClusterBorders().
+protected ClusterIndex clusters;
+
+// attackAsMuchAsPossible() keeps the countries it still has to try in this list,
+// and compares the board before and after each try to see what changed.
+protected CountryWorklist worklist;
+private int[] ownerBefore, armiesBefore;
+private boolean[] cleanCluster;
+
+// The odds of every battle, looked up instead of guessed from army ratios
+protected BattleOdds odds;
+
+// Counts and times the attack and fortify helpers when AgentProfiler.ENABLED
+protected AgentProfiler profiler;
+
+// Cheapest attack routes from our countries, or into a continent, computed on demand
+protected CheapestRoutes routes;
+
+// Per-continent and per-player counts of countries and armies. Subclasses sync() it at the start of each phase,
+// and the attacks, placements and fortifications made here report their changes to it.
+protected ContinentStats continentStats;
+
+// The board in primitive arrays, for trying out moves without making them. Subclasses refresh() it at the start of each phase.
+protected BoardSnapshot snapshot;
+
+// The time budget of each phase of the turn. Subclasses begin() and end() the phases they want budgeted.
+// The helpers below that can run long time their phase themselves if it has not been begun,
+// and finish more cheaply once it runs over.
+protected PhaseBudget budget;
+
 
 
 public SmartAgentBase()
@@ -51,6 +85,43 @@ public void setPrefs( int newID, Board theboard )
 
 	numCountries = countries.length;
 	numContinents = board.getNumberOfContinents();
+
+	walk = new ClusterWalk(numCountries);
+	clusters = new ClusterIndex(ID, countries);
+	worklist = new CountryWorklist(numCountries);
+	odds = BattleOdds.getDefault();
+	routes = new CheapestRoutes(countries);
+	profiler = new AgentProfiler();
+	continentStats = new ContinentStats(countries, numContinents, board.getNumberOfPlayers());
+	snapshot = new BoardSnapshot(countries, numContinents);
+	budget = new PhaseBudget();
+	ownerBefore = new int[numCountries];
+	armiesBefore = new int[numCountries];
+	cleanCluster = new boolean[numCountries];
+	}
+
+// Returns the codes of the border countries of <root>'s cluster, in ascending code order.
+// The array is a snapshot, so it is safe to attack from the borders while going through it.
+// ClusterBorderIterator gave the borders in the order of its search from <root>. Code order is the same whichever
+// country of the cluster is the root, so every country of a cluster makes the same attacks, which is what lets
+// attackAsMuchAsPossible() try a cluster once instead of once per country. It changes the order in which the attack
+// helpers try the borders, the order of fortifyCluster(), and which country pickCountryNearCluster() returns on a tie.
+protected int[] getClusterBorders( Country root )
+	{
+	int[] borders = clusters.getBorders(root.getCode());
+	if (borders == null)
+		{
+		// the index only knows about our own clusters
+		List<Country> list = new ArrayList<Country>();
+		CountryIterator iterator = new ClusterBorderIterator( root );
+		while (iterator.hasNext())
+			list.add(iterator.next());
+		borders = new int[list.size()];
+		for (int i = 0; i < borders.length; i++)
+			borders[i] = list.get(i).getCode();
+		Arrays.sort(borders);
+		}
+	return borders;
 	}
 
 // SmartAgentBase leaves it up to subclasses to implement the following methods:
@@ -222,26 +293,22 @@ protected int pickCountryNearCluster( Country root )
 	{
 	// do a breadth first search outwards starting with this cluster's borders
 	// return as soon as we find an unowned country
-	CountryIterator borders = new ClusterBorderIterator( root );
-	List cluster = new ArrayList();
-	while (borders.hasNext())
+	walk.clear();
+	int[] borders = getClusterBorders( root );
+	for (int b = 0; b < borders.length; b++)
 		{
-		cluster.add(borders.next());
+		walk.visit(borders[b]);
 		}
 
-	for (int i = 0; i < cluster.size(); i++)
+	while (walk.hasNext())
 		{
-		CountryIterator neighbors = new NeighborIterator( (Country)cluster.get(i) );
-		while ( neighbors.hasNext())
+		int[] neighbors = countries[walk.next()].getAdjoiningCodeList();
+		for (int i = 0; i < neighbors.length; i++)
 			{
-			Country neighbor = neighbors.next();
-			if ( neighbor.getOwner() == -1 )
-				return neighbor.getCode();
-			else if( !cluster.contains(neighbor))
-				{
-				// Then we add it to the List. in time its neighbors will get expanded
-				cluster.add(neighbor);
-				}
+			if ( countries[neighbors[i]].getOwner() == -1 )
+				return neighbors[i];
+			// otherwise we add it to the walk. in time its neighbors will get expanded
+			walk.visit(neighbors[i]);
 			}
 		}
 
@@ -264,8 +331,8 @@ protected int getEasiestContToTake()
 	float easiestContRatio = -1;
 	int easiestCont = -1;
 	for (int cont = 0; cont < numContinents; cont++) {
-		int enemies = BoardHelper.getEnemyArmiesInContinent( ID, cont, countries );
-		int ours = BoardHelper.getPlayerArmiesInContinent( ID, cont, countries );
+		int enemies = continentStats.getEnemyArmiesInContinent( ID, cont );
+		int ours = continentStats.getPlayerArmiesInContinent( ID, cont );
 		float newratio = (float)ours/(float)enemies;
 		if (newratio > easiestContRatio && board.getContinentBonus(cont) > 0) {
 			easiestCont = cont;
@@ -285,7 +352,7 @@ protected boolean weOwnContsArround(Country center)
 	while (n.hasNext())
 		{
 		Country neib = n.next();
-		if (neib.getContinent() != cont && ! BoardHelper.playerOwnsContinent(ID, neib.getContinent(), countries))
+		if (neib.getContinent() != cont && ! continentStats.playerOwnsContinent(ID, neib.getContinent()))
 			{
 			return false;
 			}
@@ -305,7 +372,7 @@ protected void placeArmiesToTakeCont( int numberOfArmies, int wantCont )
 		}
 		
 	// we want to place our armies strategically, in order to conquer <wantCont>
-	if (BoardHelper.playerOwnsContinent( ID, wantCont, countries))
+	if (continentStats.playerOwnsContinent( ID, wantCont ))
 		{
 		// then we already own it, place on the weakest borders that we don't envelope
 		int[] borders = BoardHelper.getContinentBorders(wantCont, countries);
@@ -325,7 +392,7 @@ protected void placeArmiesToTakeCont( int numberOfArmies, int wantCont )
 				{	// this can happen when the entire map is one continent. thus it has no borders
 				leastID = borders[rand.nextInt(borders.length)];
 				}
-			board.placeArmies(1, leastID);
+			placeArmiesOn(1, countries[leastID]);
 			placed++;
 			}
 		return;
@@ -361,7 +428,7 @@ protected void placeArmiesToTakeCont( int numberOfArmies, int wantCont )
 	// if we found anyplace at all, do it
 	if (bestPlace != null)
 		{
-		board.placeArmies(numberOfArmies, bestPlace);
+		placeArmiesOn(numberOfArmies, bestPlace);
 		return;
 		}
 
@@ -370,24 +437,26 @@ protected void placeArmiesToTakeCont( int numberOfArmies, int wantCont )
 	int[] route = BoardHelper.cheapestRouteFromOwnerToCont( ID, wantCont, countries );
 	debug("BoardHelper.cheapestRouteFromOwnerToCont("+ID+", "+wantCont+") = "+new CountryRoute(route, countries));
 	int placer = route[0];
-	board.placeArmies(numberOfArmies, placer);
+	placeArmiesOn(numberOfArmies, countries[placer]);
 	}
 
 // this method places armies one at a time on the weakest border surrounding <root>
 // it will call itself untill all armies have been placed.
 protected void placeArmiesOnClusterBorder( int numberOfArmies, Country root )
 	{
+	// the first call times the placement unless the caller already does
+	boolean timed = budget.beginIfIdle(PhaseBudget.PLACE);
 	if (root==null)
 		System.out.println("SmartBase.placeArmiesOnClusterBorder() -> the cluster root==null. 654213465");
 
-	CountryIterator borders = new ClusterBorderIterator( root );
+	int[] borders = getClusterBorders( root );
 
 	// Find the weakest of the cluster borders:
 	Country weakest = null;
 	int weakestArmies = 1000000;
-	while (borders.hasNext())
+	for (int b = 0; b < borders.length; b++)
 		{
-		Country border = borders.next();
+		Country border = countries[borders[b]];
 		if (border.getArmies() < weakestArmies)
 			{
 			weakestArmies = border.getArmies();
@@ -398,15 +467,22 @@ protected void placeArmiesOnClusterBorder( int numberOfArmies, Country root )
 	if (weakest == null)
 		{
 		System.out.println("SmartBase.placeArmiesOnClusterBorder() -> weakest==null. 7404524");
-		board.placeArmies( numberOfArmies, root );
+		placeArmiesOn( numberOfArmies, root );
+		if (timed)
+			budget.end(PhaseBudget.PLACE);
 		return;
 		}
 		
 	int numberToPlace = Math.min(numberOfArmies, Math.max(1, numberOfArmies/100));
+	// past the placement budget the rest all go on the weakest border
+	if (budget.tier(PhaseBudget.PLACE) != PhaseBudget.FULL)
+		numberToPlace = numberOfArmies;
 	
-	board.placeArmies( numberToPlace, weakest );
+	placeArmiesOn( numberToPlace, weakest );
 	if (numberOfArmies > numberToPlace)
 		placeArmiesOnClusterBorder( numberOfArmies-numberToPlace, root );
+	if (timed)
+		budget.end(PhaseBudget.PLACE);
 	}
 
 
@@ -421,12 +497,13 @@ protected void placeArmiesOnClusterBorder( int numberOfArmies, Country root )
 // return true if we won at least one attack 
 protected boolean attackEasyExpand(Country root)
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	// get the borders of the cluster centered on <root>:
-	CountryIterator borders = new ClusterBorderIterator( root );
+	int[] borders = getClusterBorders( root );
 
 	boolean wonAttack = false;
-	while (borders.hasNext()) {
-		Country border = borders.next();
+	for (int b = 0; b < borders.length; b++) {
+		Country border = countries[borders[b]];
 
 		CountryIterator neighbors = new NeighborIterator(border);
 		int enemies = 0;
@@ -441,11 +518,12 @@ protected boolean attackEasyExpand(Country root)
 		if (enemies == 1 && border.getArmies() > enemy.getArmies()) {
 			// then we will attack that one country and move everything in, thus expanding our borders.
 			moveInMemory = 1000000;
-			if (board.attack( border, enemy, true) > 0)
+			if (attack( border, enemy, true) > 0)
 				wonAttack = true;
 			moveInMemory = -1;
 			}
 		}
+	profiler.record(AgentProfiler.ATTACK_EASY_EXPAND, started, allocated);
 	return wonAttack;
 	}
 
@@ -455,10 +533,11 @@ protected boolean attackEasyExpand(Country root)
 // return true if we won at least one attack 
 protected boolean attackFillOut(Country root )
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	boolean wonAttack = false;
-	CountryIterator borders = new ClusterBorderIterator( root );
-	while (borders.hasNext()) {
-		Country border = borders.next();
+	int[] borders = getClusterBorders( root );
+	for (int b = 0; b < borders.length; b++) {
+		Country border = countries[borders[b]];
 
 		CountryIterator neighbors = new NeighborIterator(border);
 		while (neighbors.hasNext()) {
@@ -467,13 +546,14 @@ protected boolean attackFillOut(Country root )
 				// attack it
 				if (neighbor.getArmies() < border.getArmies()) {
 					moveInMemory = 0; // since we are attacking from a border we remember to move zero armies in
-					if (board.attack( border, neighbor, true) == 7)
+					if (attack( border, neighbor, true) == 7)
 						wonAttack = true;
 					moveInMemory = -1;
 					}
 				}
 			}
 		}
+	profiler.record(AgentProfiler.ATTACK_FILL_OUT, started, allocated);
 	return wonAttack;
 	}
 
@@ -481,12 +561,13 @@ protected boolean attackFillOut(Country root )
 // return true if we won at least one attack
 protected boolean attackConsolidate( Country root)
 	{
-	CountryIterator borders = new ClusterBorderIterator( root );
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
+	int[] borders = getClusterBorders( root );
 	boolean wonAttack = false;
 
-	while (borders.hasNext())
+	for (int b = 0; b < borders.length; b++)
 		{
-		Country border = borders.next();
+		Country border = countries[borders[b]];
 
 		CountryIterator neighbors = new NeighborIterator(border);
 		int enemies = 0;
@@ -527,7 +608,7 @@ protected boolean attackConsolidate( Country root)
 					if (((Country)ours.get(i)).getArmies() > 1 && ((Country)ours.get(i)).canGoto(enemy))
 						{
 						moveInMemory = 1000000;
-						if (board.attack( (Country)ours.get(i), enemy, true) > 0)
+						if (attack( (Country)ours.get(i), enemy, true) > 0)
 							wonAttack = true;
 						}
 					}
@@ -535,6 +616,7 @@ protected boolean attackConsolidate( Country root)
 				}
 			}
 		}
+	profiler.record(AgentProfiler.ATTACK_CONSOLIDATE, started, allocated);
 	return wonAttack;
 	}
 
@@ -543,13 +625,14 @@ protected boolean attackConsolidate( Country root)
 // return true if we won at least one attack 
 protected boolean attackSplitOff( Country root )
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	moveInMemory = -1;
-	CountryIterator borders = new ClusterBorderIterator(root );
+	int[] borders = getClusterBorders( root );
 	boolean wonAttack = false;
 
-	while (borders.hasNext()) 
+	for (int b = 0; b < borders.length; b++) 
 		{
-		Country border = borders.next();
+		Country border = countries[borders[b]];
 
 		CountryIterator neighbors = new NeighborIterator(border);
 		while (neighbors.hasNext()) 
@@ -557,11 +640,12 @@ protected boolean attackSplitOff( Country root )
 			Country neighbor = neighbors.next();
 			if (neighbor.getOwner() != ID && neighbor.getArmies() < border.getArmies()) 
 				{
-				if (board.attack( border, neighbor, true) > 0)
+				if (attack( border, neighbor, true) > 0)
 					wonAttack = true;
 				}
 			}
 		}
+	profiler.record(AgentProfiler.ATTACK_SPLIT_OFF, started, allocated);
 	return wonAttack;
 	}
 
@@ -571,13 +655,14 @@ protected boolean attackSplitOff( Country root )
 // return true if we won at least one attack 
 protected boolean attackSplitUp( Country root, float attackRatio )
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	/**** STAGE 4 ATTACK ****/
 	// Now the third stage. If it leeds to a good chance of more land, we split our borders into two or more armie groups.
-	CountryIterator borders = new ClusterBorderIterator(root );
+	int[] borders = getClusterBorders( root );
 	boolean wonAttack = false;
 
-	while (borders.hasNext()) {
-		Country border = borders.next();
+	for (int b = 0; b < borders.length; b++) {
+		Country border = countries[borders[b]];
 
 		CountryIterator neighbors = new NeighborIterator(border);
 		int enemies = 0;
@@ -601,7 +686,7 @@ protected boolean attackSplitUp( Country root, float attackRatio )
 				Country neighbor = neighbors.next();
 				if (neighbor.getOwner() != ID) { // then we kill this enemy with 1/<enemies>
 					moveInMemory = armiesPer;
-					if (board.attack( border, neighbor, true) > 0)
+					if (attack( border, neighbor, true) > 0)
 						wonAttack = true;
 					moveInMemory = -1;
 					// xxagentxx: if we lose lots of armies in the first attacks, the last attacks might not happen because we are out of armies. This is a bug, but not very serious.
@@ -610,6 +695,7 @@ protected boolean attackSplitUp( Country root, float attackRatio )
 				}
 			}
 		}
+	profiler.record(AgentProfiler.ATTACK_SPLIT_UP, started, allocated);
 	return wonAttack;
 	}
 
@@ -617,10 +703,12 @@ protected boolean attackSplitUp( Country root, float attackRatio )
 // return true if we won at least one attack 
 protected boolean tripleAttackPack(Country root)
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	boolean won = false;
 	while ( attackEasyExpand(root) )	{won = true;}
 	attackFillOut(root);
 	while ( attackConsolidate(root) )	{won = true;}
+	profiler.record(AgentProfiler.TRIPLE_ATTACK_PACK, started, allocated);
 	return won;
 	}
 
@@ -635,7 +723,7 @@ protected boolean hogWildCheck()
 	int enemyArmies = 0;
 	for (int i = 0; i < numPlayers; i++)
 		{
-		armies[i] = BoardHelper.getPlayerArmies(i, countries);
+		armies[i] = continentStats.getPlayerArmies(i);
 		if (i != ID)
 			{
 			enemyArmies += armies[i];
@@ -659,24 +747,124 @@ protected void attackHogWild()
 // Shake things up
 protected void attackStalemate()
 	{
-	if (BoardHelper.getPlayerArmies(ID, countries) > 1500)
+	if (continentStats.getPlayerArmies(ID) > 1500)
 		attackAsMuchAsPossible();
 	}
 
+// Attack with all of our clusters until none of them can attack any more.
+// Every country of a cluster attacks from the same borders, so once a cluster has been tried without changing
+// the board its other countries are skipped. Only countries near a battle are put back on the worklist.
 protected void attackAsMuchAsPossible()
 	{
-	boolean attacked = true;
-	CountryIterator e;
-	while (attacked) {
-		attacked = false;
-		e = new PlayerIterator(ID, countries);
-		while (e.hasNext())
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
+	// time the attacks here unless the caller already does
+	boolean timed = budget.beginIfIdle(PhaseBudget.ATTACK);
+	worklist.clear();
+	for (int i = 0; i < numCountries; i++)
+		{
+		cleanCluster[i] = false;
+		if (countries[i].getOwner() == ID)
+			worklist.add(i);
+		}
+	clusters.update();
+
+	// The board only changes while a cluster is attacking, and the index is brought up to date after that.
+	// cleanCluster is indexed by cluster id, which is the root of the cluster's union-find tree. A conquest can merge
+	// clusters under a different root, so the merged cluster is always marked after the update, under its new id
+	while (worklist.hasNext())
+		{
+		// past the attack budget each cluster gets one more try at most, and past twice the budget we stop
+		int tier = budget.tier(PhaseBudget.ATTACK);
+		if (tier == PhaseBudget.MINIMAL)
+			break;
+		int code = worklist.next();
+		int cluster = clusters.getKnownClusterId(code);
+		if (cluster == -1 || cleanCluster[cluster])
+			continue;
+
+		if (tier == PhaseBudget.FULL)
+			{
+			for (int i = 0; i < numCountries; i++)
+				{
+				ownerBefore[i] = countries[i].getOwner();
+				armiesBefore[i] = countries[i].getArmies();
+				}
+			}
+
+		Country c = countries[code];
+		while ( tripleAttackPack(c) ) {}
+		while ( attackSplitUp(c, 0.01f) ) {}
+
+		if (tier == PhaseBudget.FULL)
+			{
+			// queueChangedNeighborhoods() updates the index and marks the clusters near a change, merged ones included
+			if (queueChangedNeighborhoods())
+				worklist.add(code); // try this cluster again, as it may have more attacks now
+			else
+				cleanCluster[cluster] = true; // nothing changed, so <cluster> is still its id
+			}
+		else
 			{
-			Country c = e.next();
-			while ( tripleAttackPack(c) ) { attacked = true; }
-			while ( attackSplitUp(c, 0.01f) ) { attacked = true; }
+			// this was the cluster's last try, and what it conquered is part of it now
+			clusters.update();
+			cleanCluster[clusters.getKnownClusterId(code)] = true;
 			}
 		}
+	if (timed)
+		budget.end(PhaseBudget.ATTACK);
+	profiler.record(AgentProfiler.ATTACK_AS_MUCH_AS_POSSIBLE, started, allocated);
+	}
+
+// Put our countries within two steps of every country that changed since the ownerBefore/armiesBefore snapshot
+// back on the worklist. (The attack methods look at the neighbors of the enemies next to our borders.)
+// Returns true if anything changed.
+private boolean queueChangedNeighborhoods()
+	{
+	boolean changed = false;
+	clusters.update();
+	for (int i = 0; i < numCountries; i++)
+		{
+		if (countries[i].getOwner() != ownerBefore[i] || countries[i].getArmies() != armiesBefore[i])
+			{
+			changed = true;
+			queueIfOurs(i);
+			int[] neighbors = countries[i].getAdjoiningCodeList();
+			for (int j = 0; j < neighbors.length; j++)
+				{
+				queueIfOurs(neighbors[j]);
+				int[] secondNeighbors = countries[neighbors[j]].getAdjoiningCodeList();
+				for (int k = 0; k < secondNeighbors.length; k++)
+					queueIfOurs(secondNeighbors[k]);
+				}
+			}
+		}
+	return changed;
+	}
+
+private void queueIfOurs(int code)
+	{
+	int cluster = clusters.getKnownClusterId(code);
+	if (cluster != -1)
+		{
+		cleanCluster[cluster] = false;
+		worklist.add(code);
+		}
+	}
+
+// Place armies on <country> and keep continentStats up to date
+protected void placeArmiesOn( int numberOfArmies, Country country )
+	{
+	board.placeArmies(numberOfArmies, country);
+	continentStats.countryChanged(country);
+	}
+
+// Attack <defender> from <attacker> and keep continentStats up to date. Returns what board.attack() returns.
+protected int attack( Country attacker, Country defender, boolean attackTillDead )
+	{
+	int result = board.attack(attacker, defender, attackTillDead);
+	continentStats.countryChanged(attacker);
+	continentStats.countryChanged(defender);
+	return result;
 	}
 
 // This method first checks to see if we can still aquire a card by conquering a country.
@@ -689,13 +877,15 @@ protected void attackForCard()
 
 protected void attackForCard(int outnumberTimes)
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	if (! board.useCards() || board.tookOverACountry())
 		{
+		profiler.record(AgentProfiler.ATTACK_FOR_CARD, started, allocated);
 		return;
 		}
 
-	// find the best matchup of all our enemies
-	float bestRatio = 0;
+	// find the best matchup of all our enemies: the one we are most likely to win
+	float bestOdds = 0;
 	Country bestUs = null;
 	Country bestThem = null;
 	CountryIterator ours = new PlayerIterator(ID, countries);
@@ -706,11 +896,15 @@ protected void attackForCard(int outnumberTimes)
 		while (thems.hasNext())
 			{
 			Country them = thems.next();
-			if (them.getOwner() != ID && (us.getArmies()*1.0/them.getArmies()) > bestRatio && us.canGoto(them))
+			if (them.getOwner() != ID && us.canGoto(them))
 				{
-				bestRatio = (us.getArmies()*1.0f/them.getArmies());
-				bestUs = us;
-				bestThem = them;
+				float winOdds = odds.getWinProbability(us.getArmies(), them.getArmies());
+				if (winOdds > bestOdds)
+					{
+					bestOdds = winOdds;
+					bestUs = us;
+					bestThem = them;
+					}
 				}
 			}
 		}
@@ -719,9 +913,10 @@ protected void attackForCard(int outnumberTimes)
 		{
 		debug("executing an attackForCard attack");
 		setmoveInMemoryBeforeCardAttack(bestUs);		// boscoe and Yakool implement this differently
-		board.attack(bestUs, bestThem, true);
+		attack(bestUs, bestThem, true);
 		moveInMemory = -1;
 		}
+	profiler.record(AgentProfiler.ATTACK_FOR_CARD, started, allocated);
 	}	// end of  attackForCard()
 
 
@@ -767,31 +962,52 @@ protected int memoryMoveArmiesInTest(int cca, int ccd)
 	return -1;
 	}
 
+// fortifyCluster() once for each of our clusters: the cheap way to finish a fortify phase
+protected void fortifyEveryCluster()
+	{
+	clusters.update();
+	for (int i = 0; i < numCountries; i++)
+		cleanCluster[i] = false;
+	for (int i = 0; i < numCountries; i++)
+		{
+		int cluster = clusters.getKnownClusterId(i);
+		if (cluster != -1 && !cleanCluster[cluster])
+			{
+			cleanCluster[cluster] = true;
+			fortifyCluster( countries[i] );
+			}
+		}
+	}
+
 // fortify armies outwards towards the borders of the cluster
 protected void fortifyCluster( Country root )
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	// We work from our borders back, fortifying closer.
-	// Start out by getting a List of the cluster's borders:
-	CountryIterator borders = new ClusterBorderIterator( root );
-	List cluster = new ArrayList();
-	while (borders.hasNext()) {
-		cluster.add(borders.next());
+	// Start out by putting the cluster's borders in the walk:
+	walk.clear();
+	int[] borders = getClusterBorders( root );
+	for (int b = 0; b < borders.length; b++) {
+		walk.visit(borders[b]);
 		}
 
-	// So now the cluster borders are in <cluster>. fill it up while fortifying towards the borders.
-	for (int i = 0; i < cluster.size(); i++) {
-		CountryIterator neighbors = new NeighborIterator( (Country)cluster.get(i) );
-		while ( neighbors.hasNext()) {
-			Country neighbor = neighbors.next();
-			if ( neighbor.getOwner() == ID && ! cluster.contains(neighbor)) {
-				// Then <neighbor> is part of the cluster. fortify any armies back and add to the List
-				if (neighbor.canGoto( (Country)cluster.get(i))) { // this if statement should only return false when their are single-way borders on the map
-					board.fortifyArmies( neighbor.getMoveableArmies(), neighbor, (Country)cluster.get(i) );
+	// So now the cluster borders are in <walk>. fill it up while fortifying towards the borders.
+	while (walk.hasNext()) {
+		Country inner = countries[walk.next()];
+		int[] neighbors = inner.getAdjoiningCodeList();
+		for (int i = 0; i < neighbors.length; i++) {
+			Country neighbor = countries[neighbors[i]];
+			if ( neighbor.getOwner() == ID && walk.visit(neighbors[i])) {
+				// Then <neighbor> is part of the cluster. fortify any armies back (it was added to the walk above)
+				if (neighbor.canGoto( inner )) { // this if statement should only return false when their are single-way borders on the map
+					board.fortifyArmies( neighbor.getMoveableArmies(), neighbor, inner );
+					continentStats.countryChanged(neighbor);
+					continentStats.countryChanged(inner);
 					}
-				cluster.add(neighbor);
 				}
 			}
 		}
+	profiler.record(AgentProfiler.FORTIFY_CLUSTER, started, allocated);
 	}
 
 /** Returns the contcode of the continent that we own with the most countries in it. */
@@ -800,10 +1016,10 @@ protected int getBiggestOwnedCont()
 	int bestCont = -1;
 	int bestContSize = -1;
 	for(int i = 0; i < numContinents; i++)
-		if (BoardHelper.playerOwnsContinent(ID, i, countries) && BoardHelper.getContinentSize(i,countries) > bestContSize)
+		if (continentStats.playerOwnsContinent(ID, i) && continentStats.getContinentSize(i) > bestContSize)
 			{
 			bestCont = i;
-			bestContSize = BoardHelper.getContinentSize(i,countries);
+			bestContSize = continentStats.getContinentSize(i);
 			}
 	return bestCont;
 	}
@@ -815,7 +1031,7 @@ protected int getMostValuablePositiveOwnedCont()
 	int bestCont = -1;
 	int bestContBonus = -1;
 	for(int i = 0; i < numContinents; i++)
-		if (BoardHelper.playerOwnsContinent(ID, i, countries) && board.getContinentBonus(i) > bestContBonus)
+		if (continentStats.playerOwnsContinent(ID, i) && board.getContinentBonus(i) > bestContBonus)
 			{
 			bestCont = i;
 			bestContBonus = board.getContinentBonus(i);
@@ -846,9 +1062,9 @@ protected boolean placeArmiesToKillDominantPlayer(int numberOfArmies)
 	int totalArmies = 0, totalIncome = 0;
 	for (int i = 0; i < numPlayers; i++)
 		{
-		armies[i] = BoardHelper.getPlayerArmies(i, countries);
+		armies[i] = continentStats.getPlayerArmies(i);
 		incomes[i] = board.getPlayerIncome(i);
-		ownedCountries[i] = BoardHelper.getPlayerCountries(i, countries);
+		ownedCountries[i] = continentStats.getPlayerCountries(i);
 		totalArmies += armies[i];
 		totalIncome += incomes[i];
 		}
@@ -879,45 +1095,55 @@ protected boolean placeArmiesToKillPlayer(int numberOfArmies, int playerToAttack
 	for (int i = 0; i < numContinents; i++)
 		{
 		mustKillPlayerOwnsCont[i] = false;
-		if (BoardHelper.playerOwnsContinent(playerToAttack, i, countries))
+		if (continentStats.playerOwnsContinent(playerToAttack, i))
 			mustKillPlayerOwnsCont[i] = true;
 		}
 
 	// now what?
 	// place armies to take out the easiest continent
 
-	// find the cost of taking out each one he owns
+	// find the cost of taking out each one he owns.
+	// One search from all of our countries gives the cheapest route to every country,
+	// and the cheapest way into a continent is the route to its cheapest country.
+	routes.compute(ID);
 	int[] cost = new int[numContinents];
+	int[] entry = new int[numContinents];
+	for (int i = 0; i < numContinents; i++)
+		{
+		cost[i] = CheapestRoutes.UNREACHABLE;
+		entry[i] = -1;
+		}
+	for (int i = 0; i < numCountries; i++)
+		{
+		int cont = countries[i].getContinent();
+		if (mustKillPlayerOwnsCont[cont] && routes.getCost(i) < cost[cont])
+			{
+			cost[cont] = routes.getCost(i);
+			entry[cont] = i;
+			}
+		}
+
 	int smallestCost = 1000000;
 	int placer = -1;
 	for (int i = 0; i < numContinents; i++)
 		{
-		cost[i] = -1;
-		if (mustKillPlayerOwnsCont[i])
+		if (entry[i] != -1 && cost[i] < smallestCost)
 			{
-			int[] path = BoardHelper.cheapestRouteFromOwnerToCont(ID, i, countries);
-			if (path != null)
-				{
-				cost[i] = pathCost(path);
-
-				if (cost[i] < smallestCost)
-					{
-					smallestCost = cost[i];
-					placer = path[0];
-					}
-				}
+			smallestCost = cost[i];
+			placer = routes.getSource(entry[i]);
 			}
 		}
 
 	if (placer == -1)
 		return false;
 
-	board.placeArmies(numberOfArmies, placer);
+	placeArmiesOn(numberOfArmies, countries[placer]);
 	return true;
 	}
 
 protected void attackToKillPlayer( int player )
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 debug("starting attackToKillPlayer -> "+player);
 	// get the bonus values of all the conts they own:
 	int[] ownContValue = new int[numContinents];
@@ -954,27 +1180,43 @@ debug("starting attackToKillPlayer -> "+player);
 			}
 		}
 debug("ending attackToKillPlayer -> "+player);
+	profiler.record(AgentProfiler.ATTACK_TO_KILL_PLAYER, started, allocated);
 	}
 
 protected boolean attackToKillContinent(int cont)
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 debug("starting attackToKillContinent -> "+cont);
-	CountryIterator armies = new ArmiesIterator( ID, 2, countries );
-	while (armies.hasNext())
+	// One search backwards from the continent gives the cheapest route into it from every one of our countries.
+	// We launch from the country with the most armies to spare over the cost of its route.
+	// A failed attack changes the board, so then we search again: the failed country has no armies left to try.
+	while (true)
 		{
-		Country us = armies.next();
-		int[] path = BoardHelper.easyCostFromCountryToContinent(us.getCode(), cont, countries);
-
-		if (path != null && pathCost(path) < us.getArmies())
+		routes.computeToContinent(ID, cont);
+		Country launch = null;
+		int bestSpare = 0;
+		for (int i = 0; i < numCountries; i++)
 			{
-			if (attackAlongPath( path ))
+			Country us = countries[i];
+			if (us.getOwner() == ID && us.getArmies() >= 2 && routes.getCost(i) != CheapestRoutes.UNREACHABLE
+					&& us.getArmies() - routes.getCost(i) > bestSpare)
 				{
-				// we succeeded in killing the continent. our job is done.
-				return true;
+				bestSpare = us.getArmies() - routes.getCost(i);
+				launch = us;
 				}
 			}
+		if (launch == null)
+			{
+			profiler.record(AgentProfiler.ATTACK_TO_KILL_CONTINENT, started, allocated);
+			return false;
+			}
+		if (attackAlongPath( routes.getRoute(launch.getCode()) ))
+			{
+			// we succeeded in killing the continent. our job is done.
+			profiler.record(AgentProfiler.ATTACK_TO_KILL_CONTINENT, started, allocated);
+			return true;
+			}
 		}
-	return false;
 	}
 
 
@@ -999,17 +1241,20 @@ protected int pathCost( int[] path )
 // otherwise false
 protected boolean attackAlongPath( int[] path )
 	{
+	long started = AgentProfiler.time(), allocated = AgentProfiler.allocated();
 	for (int i = 1; i < path.length; i++)
 		{
 		moveInMemory = 1000000;
-		if (countries[path[i-1]].getArmies() == 1 || board.attack(path[i-1], path[i], true) == 13)
+		if (countries[path[i-1]].getArmies() == 1 || attack(countries[path[i-1]], countries[path[i]], true) == 13)
 			{
 			// then we lost
 			moveInMemory = -1;
+			profiler.record(AgentProfiler.ATTACK_ALONG_PATH, started, allocated);
 			return false;
 			}
 		}
 	moveInMemory = -1;
+	profiler.record(AgentProfiler.ATTACK_ALONG_PATH, started, allocated);
 	return true;
 	}
 